@@ -0,0 +1,65 @@
+package config;
+
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+
+
+/**
+ * Converts the trip dates of schedules and the journey dates of tickets written as yyyy-MM-dd
+ * strings to the epoch days they are stored as now. Runs while the context starts, before the
+ * indexes are built and the web server accepts requests, so no reader ever sees a string date.
+ * One server side update per collection only matches documents still holding a string, so it
+ * is a no-op once done and safe to run on several nodes at once.
+ */
+@Slf4j
+@Component
+public class DateStorageMigration {
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${brs.date.migrate.enabled:true}")
+    private boolean enabled;
+
+    @PostConstruct
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        long schedules = toEpochDays(mongoTemplate.getCollectionName(TripSchedule.class), "tripDate");
+        long tickets = toEpochDays(mongoTemplate.getCollectionName(Ticket.class), "journeyDate");
+        if (schedules > 0 || tickets > 0) {
+            log.info("Converted the dates of {} schedules and {} tickets to epoch days", schedules, tickets);
+        }
+    }
+
+    /**
+     * Replaces the string dates of a field with the epoch days they denote
+     *
+     * @param collectionName
+     * @param field
+     * @return the number of documents converted
+     */
+    private long toEpochDays(String collectionName, String field) {
+        Document millis = new Document("$toLong", new Document("$dateFromString",
+                new Document("dateString", "$" + field).append("format", "%Y-%m-%d")));
+        Document epochDay = new Document("$toInt", new Document("$divide", Arrays.asList(millis, MILLIS_PER_DAY)));
+        UpdateResult result = mongoTemplate.getCollection(collectionName).updateMany(
+                new Document(field, new Document("$type", "string")),
+                Collections.singletonList(new Document("$set", new Document(field, epochDay))));
+        return result.getModifiedCount();
+    }
+}
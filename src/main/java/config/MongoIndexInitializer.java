@@ -0,0 +1,246 @@
+package config;
+
+import com.mongodb.DBRef;
+import com.mongodb.MongoException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import model.cab.Agency;
+import model.cab.Cab;
+import model.cab.SeatHoldEntry;
+import model.cab.Stop;
+import model.cab.Ticket;
+import model.cab.Trip;
+import model.cab.TripSchedule;
+import model.cab.WaitlistEntry;
+import model.user.Role;
+import model.user.User;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * Owns the index set of the reservation collections. The indexes are declared with @Indexed and
+ * @CompoundIndex on the documents, on startup every declared index of the listed document types
+ * is created when missing and checked to exist afterwards, so the set does not depend on auto
+ * index creation or on which documents the mapping context has seen so far. Stored dates are
+ * converted first and duplicate trip schedules merged, so the unique schedule index can be built,
+ * and startup fails if any declared index is still missing. Once the application is ready the
+ * query shapes of the hot repository methods are explained and the ones whose winning plan still
+ * scans the whole collection are reported.
+ */
+@Slf4j
+@Component
+@DependsOn("dateStorageMigration")
+public class MongoIndexInitializer {
+    private static final String COLLECTION_SCAN = "COLLSCAN";
+
+    //listed explicitly, the mapping context only knows the documents it has already seen
+    static final List<Class<?>> DOCUMENTS = Arrays.asList(Agency.class, Cab.class, Role.class, SeatHoldEntry.class,
+            Stop.class, Ticket.class, Trip.class, TripSchedule.class, User.class, WaitlistEntry.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private TripScheduleDeduplication tripScheduleDeduplication;
+
+    @Value("${brs.index.explain:true}")
+    private boolean explain;
+
+    private volatile List<String> unindexedQueries = new ArrayList<>();
+
+    /**
+     * Merges duplicate schedules, then creates the declared indexes before any bean using the
+     * collections starts
+     */
+    @PostConstruct
+    public void initialize() {
+        tripScheduleDeduplication.deduplicate();
+        ensureIndexes();
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportUnindexedQueries() {
+        if (explain) {
+            unindexedQueries = explainQueries();
+            if (unindexedQueries.isEmpty()) {
+                log.info("All reservation query paths are served by an index");
+            } else {
+                log.warn("Queries without an index: {}", unindexedQueries);
+            }
+        }
+    }
+
+    /**
+     * Returns the query paths that scanned a whole collection when last explained
+     *
+     * @return
+     */
+    public List<String> getUnindexedQueries() {
+        return unindexedQueries;
+    }
+
+    /**
+     * Creates the declared indexes of every document type and checks they all exist afterwards
+     *
+     * @throws IllegalStateException if an index could not be created, typically a unique index
+     * the existing documents violate
+     */
+    private void ensureIndexes() {
+        List<String> failures = new ArrayList<>();
+        for (Class<?> type : DOCUMENTS) {
+            String collection = mongoTemplate.getCollectionName(type);
+            ensureIndexes(type, mongoTemplate.indexOps(type))
+                    .forEach(name -> failures.add(collection + "." + name));
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Declared indexes missing: " + failures);
+        }
+    }
+
+    /**
+     * Creates the declared indexes of a document type
+     *
+     * @param type
+     * @param indexOperations
+     * @return the names of the declared indexes that do not exist afterwards
+     */
+    List<String> ensureIndexes(Class<?> type, IndexOperations indexOperations) {
+        MongoPersistentEntity<?> entity = mappingContext.getRequiredPersistentEntity(type);
+        List<String> declared = new ArrayList<>();
+        for (IndexDefinition index : new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(entity.getTypeInformation())) {
+            Object name = index.getIndexOptions().get("name");
+            declared.add(name != null ? name.toString() : index.getIndexKeys().toJson());
+            try {
+                indexOperations.ensureIndex(index);
+            } catch (DataAccessException ex) {
+                log.error("Index {} on {} could not be created", index.getIndexKeys().toJson(), entity.getCollection(), ex);
+            }
+        }
+        Set<String> existing = indexOperations.getIndexInfo()
+                .stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet());
+        return declared.stream()
+                .filter(name -> !existing.contains(name))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Explains the filter and sort of every hot repository query with placeholder values
+     *
+     * @return the names of the queries whose winning plan is a collection scan
+     */
+    private List<String> explainQueries() {
+        DBRef stop = ref(Stop.class);
+        DBRef trip = ref(Trip.class);
+        DBRef agency = ref(Agency.class);
+        Map<String, Document> queries = new LinkedHashMap<>();
+        queries.put("TripScheduleRepository.findByTripDetailAndTripDay", find(TripSchedule.class,
+                new Document("tripDetail", trip).append("tripDate", 0), null));
+        queries.put("TripScheduleRepository.findByTripIdsAndDateRange", find(TripSchedule.class,
+                new Document("tripDetail", new Document("$in", Arrays.asList(trip)))
+                        .append("tripDate", new Document("$gte", 0).append("$lte", 30)), null));
+        queries.put("TripRepository.findAllBySourceStopAndDestStop", find(Trip.class,
+                new Document("sourceStop", stop).append("destStop", stop), null));
+        queries.put("TripRepository.findBySourceStopAndDestStopAndCab", find(Trip.class,
+                new Document("sourceStop", stop).append("destStop", stop).append("cab", ref(Cab.class)), null));
+        queries.put("TripRepository.findByAgency", find(Trip.class,
+                new Document("agency", agency), null));
+        queries.put("TripRepository.findIdsByAgency", find(Trip.class,
+                new Document("agency", agency).append("_id", new Document("$gt", new ObjectId())), new Document("_id", 1)));
+        queries.put("CabRepository.findByCodeAndAgency", find(Cab.class,
+                new Document("code", "").append("agency", agency), null));
+        queries.put("AgencyRepository.findByOwner", find(Agency.class,
+                new Document("owner", ref(User.class)), null));
+        queries.put("StopRepository.findByCode", find(Stop.class,
+                new Document("code", ""), null));
+        queries.put("UserRepository.findByEmail", find(User.class,
+                new Document("email", ""), null));
+        queries.put("TicketRepository.findByIdempotencyKey", find(Ticket.class,
+                new Document("idempotencyKey", ""), null));
+        queries.put("TicketRepository.expireTicketsBefore", find(Ticket.class,
+                new Document("journeyDate", new Document("$lt", 0)).append("expired", new Document("$ne", true)), null));
+        queries.put("WaitlistRepository.pollFirst", find(WaitlistEntry.class,
+                new Document("tripScheduleId", ""), new Document("position", 1)));
+        queries.put("SeatHoldRepository.pollLapsed", find(SeatHoldEntry.class,
+                new Document("expiresAt", new Document("$lt", new Date())), new Document("expiresAt", 1)));
+        List<String> unindexed = new ArrayList<>();
+        queries.forEach((name, query) -> {
+            try {
+                Document plan = mongoTemplate.getDb().runCommand(new Document("explain", query)
+                        .append("verbosity", "queryPlanner"));
+                Document queryPlanner = plan.get("queryPlanner", Document.class);
+                if (queryPlanner != null && scans(queryPlanner.get("winningPlan", Document.class))) {
+                    unindexed.add(name);
+                }
+            } catch (MongoException ex) {
+                log.warn("Query {} could not be explained", name, ex);
+            }
+        });
+        return unindexed;
+    }
+
+    private Document find(Class<?> type, Document filter, Document sort) {
+        Document find = new Document("find", mongoTemplate.getCollectionName(type)).append("filter", filter);
+        if (sort != null) {
+            find.append("sort", sort);
+        }
+        return find;
+    }
+
+    private DBRef ref(Class<?> type) {
+        return new DBRef(mongoTemplate.getCollectionName(type), new ObjectId());
+    }
+
+    /**
+     * Returns true if the plan or one of its input stages scans the collection
+     *
+     * @param plan
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean scans(Document plan) {
+        if (plan == null) {
+            return false;
+        }
+        if (COLLECTION_SCAN.equals(plan.getString("stage"))) {
+            return true;
+        }
+        if (scans(plan.get("inputStage", Document.class))) {
+            return true;
+        }
+        List<Document> inputStages = plan.get("inputStages", List.class);
+        return inputStages != null && inputStages.stream().anyMatch(MongoIndexInitializer::scans);
+    }
+}
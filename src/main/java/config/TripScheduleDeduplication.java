@@ -0,0 +1,153 @@
+package config;
+
+import com.mongodb.DBRef;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import model.cab.SeatHoldEntry;
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+import model.cab.WaitlistEntry;
+import util.SeatBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+/**
+ * Merges trip schedules stored more than once for the same trip and day, left behind by
+ * concurrent creation before the unique (tripDetail, tripDate) index existed. The schedule with
+ * the lowest id is kept and takes the seats taken on any copy, the tickets, waitlist entries and
+ * seat holds of the other copies are moved to it, then the copies are deleted. Runs on startup
+ * before the indexes are created and is skipped once the unique index exists, since no duplicate
+ * can be stored after that. Every step can be repeated, so an interrupted run is finished by the
+ * next one and several nodes may run it at once.
+ */
+@Slf4j
+@Component
+public class TripScheduleDeduplication {
+    //the unique (tripDetail, tripDate) index declared on TripSchedule
+    private static final String UNIQUE_INDEX = "trip_date";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Merges every group of schedules sharing a trip and day, unless the unique index exists
+     *
+     * @return the number of schedules deleted
+     */
+    public int deduplicate() {
+        boolean indexed = mongoTemplate.indexOps(TripSchedule.class).getIndexInfo()
+                .stream()
+                .anyMatch(index -> UNIQUE_INDEX.equals(index.getName()));
+        if (indexed) {
+            return 0;
+        }
+        List<Document> pipeline = Arrays.asList(
+                new Document("$group", new Document("_id", new Document("tripDetail", "$tripDetail").append("tripDate", "$tripDate"))
+                        .append("ids", new Document("$push", "$_id"))),
+                new Document("$match", new Document("ids.1", new Document("$exists", true))));
+        List<List<Object>> groups = new ArrayList<>();
+        for (Document group : mongoTemplate.getCollection(mongoTemplate.getCollectionName(TripSchedule.class))
+                .aggregate(pipeline)
+                .allowDiskUse(true)) {
+            groups.add(group.getList("ids", Object.class));
+        }
+        int deleted = 0;
+        for (List<Object> ids : groups) {
+            deleted += merge(ids);
+        }
+        if (deleted > 0) {
+            log.warn("Merged {} duplicate trip schedules into {} schedules", deleted, groups.size());
+        }
+        return deleted;
+    }
+
+    /**
+     * Merges the schedules with the given ids into the one with the lowest id
+     *
+     * @param ids
+     * @return the number of schedules deleted
+     */
+    private int merge(List<Object> ids) {
+        List<TripSchedule> tripSchedules = mongoTemplate.find(new Query(Criteria.where("_id").in(ids))
+                .with(Sort.by("_id")), TripSchedule.class);
+        if (tripSchedules.size() < 2) {
+            return 0;
+        }
+        TripSchedule keeper = tripSchedules.get(0);
+        List<TripSchedule> duplicates = tripSchedules.subList(1, tripSchedules.size());
+        int capacity = keeper.getCabCapacity();
+        long[] seatMap = seatMap(keeper, capacity);
+        long waitlistSequence = keeper.getWaitlistSequence();
+        int collisions = 0;
+        for (TripSchedule duplicate : duplicates) {
+            long[] taken = seatMap(duplicate, capacity);
+            for (int word = 0; word < seatMap.length; word++) {
+                collisions += Long.bitCount(seatMap[word] & taken[word]);
+                seatMap[word] |= taken[word];
+            }
+            waitlistSequence = Math.max(waitlistSequence, duplicate.getWaitlistSequence());
+        }
+        if (collisions > 0) {
+            log.warn("{} seats of trip schedule {} were taken on more than one copy", collisions, keeper.getId());
+        }
+        int taken = Arrays.stream(seatMap).mapToInt(Long::bitCount).sum();
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(keeper.getId())),
+                Update.update("seatMap", seatMap)
+                        .set("availableSeats", Math.max(0, capacity - taken))
+                        .max("waitlistSequence", waitlistSequence),
+                TripSchedule.class);
+
+        List<String> duplicateIds = duplicates.stream()
+                .map(TripSchedule::getId)
+                .collect(Collectors.toList());
+        List<DBRef> duplicateRefs = duplicates.stream()
+                .map(duplicate -> mongoTemplate.getConverter().toDBRef(duplicate, null))
+                .collect(Collectors.toList());
+        mongoTemplate.updateMulti(new Query(Criteria.where("tripSchedule").in(duplicateRefs)),
+                Update.update("tripSchedule", mongoTemplate.getConverter().toDBRef(keeper, null)), Ticket.class);
+        mongoTemplate.updateMulti(new Query(Criteria.where("tripScheduleId").in(duplicateIds)),
+                Update.update("tripScheduleId", keeper.getId()), SeatHoldEntry.class);
+        for (WaitlistEntry entry : mongoTemplate.find(new Query(Criteria.where("tripScheduleId").in(duplicateIds)), WaitlistEntry.class)) {
+            Query byId = new Query(Criteria.where("_id").is(entry.getId()));
+            try {
+                mongoTemplate.updateFirst(byId, Update.update("tripScheduleId", keeper.getId()), WaitlistEntry.class);
+            } catch (DuplicateKeyException ex) {
+                //the passenger also waits on the kept schedule
+                mongoTemplate.remove(byId, WaitlistEntry.class);
+            }
+        }
+        return (int) mongoTemplate.remove(new Query(Criteria.where("_id").in(duplicateIds)), TripSchedule.class)
+                .getDeletedCount();
+    }
+
+    /**
+     * Returns the taken seats of a schedule, sized for the given capacity. Schedules written
+     * before they carried a seat map count their taken seats from the first one.
+     *
+     * @param tripSchedule
+     * @param capacity
+     * @return
+     */
+    private static long[] seatMap(TripSchedule tripSchedule, int capacity) {
+        long[] seatMap = tripSchedule.getSeatMap() != null
+                ? Arrays.copyOf(tripSchedule.getSeatMap(), SeatBitmap.words(capacity))
+                : SeatBitmap.firstTaken(capacity, capacity - tripSchedule.getAvailableSeats());
+        for (int word = 0; word < seatMap.length; word++) {
+            seatMap[word] &= SeatBitmap.validMask(capacity, word);
+        }
+        return seatMap;
+    }
+}
@@ -1,36 +1,68 @@
 package controller.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import javax.validation.Valid;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import com.google.common.base.Optional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import controller.request.BookTicketRequest;
+import controller.request.BookTicketsRequest;
+import controller.request.CancelTicketRequest;
+import controller.request.GetTripSchedulesRangeRequest;
 import controller.request.GetTripSchedulesRequest;
+import controller.request.ItinerarySearchRequest;
+import controller.request.SeatHoldRequest;
+import dto.model.cab.BookingStatusDto;
+import dto.model.cab.ItineraryDto;
 import dto.model.cab.TicketDto;
 import dto.model.cab.TripDto;
 import dto.model.cab.TripScheduleDto;
 import dto.model.user.UserDto;
 import dto.response.Response;
+import util.DateCodec;
 import util.DateUtils;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.Authorization;
 import service.CabReservationService;
+import service.pipeline.BookingPipeline;
+import service.search.SearchSort;
 import service.UserService;
 
 @RestController
 @RequestMapping("/api/reservation")
 @Api(value = "brs-application")
 public class CabReservationController {
+    private static final int MAX_SEARCH_DAYS = 31;
+
+    private static final int MAX_CALENDAR_DAYS = 92;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
 	
 	@Autowired
     private CabReservationService cabReservationService;
@@ -38,6 +70,12 @@ public class CabReservationController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private BookingPipeline bookingPipeline;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/stops")
     @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
     public Response getAllStops() {
@@ -46,10 +84,72 @@ public class CabReservationController {
                 .setPayload(cabReservationService.getAllStops());
     }
 
+    @GetMapping("/stops/page")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getStopsPage(@RequestParam(value = "cursor", required = false) String cursor,
+                                 @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return Response
+                .ok()
+                .setPayload(cabReservationService.getStops(cursor, pageSize(limit)));
+    }
+
+    @GetMapping(value = "/stops/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public StreamingResponseBody streamStops() {
+        return outputStream -> writeJsonArray(outputStream, cabReservationService::streamStops);
+    }
+
+    @GetMapping("/agencies/{agencyCode}/trips")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getAgencyTripsPage(@PathVariable String agencyCode,
+                                       @RequestParam(value = "cursor", required = false) String cursor,
+                                       @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return Response
+                .ok()
+                .setPayload(cabReservationService.getAgencyTrips(agencyCode, cursor, pageSize(limit)));
+    }
+
+    @GetMapping(value = "/agencies/{agencyCode}/trips/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public StreamingResponseBody streamAgencyTrips(@PathVariable String agencyCode) {
+        //resolve the agency up front, so an unknown agency fails before the response is committed
+        cabReservationService.getAgencyTrips(agencyCode, null, 1);
+        return outputStream -> writeJsonArray(outputStream,
+                consumer -> cabReservationService.streamAgencyTrips(agencyCode, consumer));
+    }
+
+    @GetMapping("/stops/search")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response searchStops(@RequestParam("q") String prefix,
+                                @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return Response
+                .ok()
+                .setPayload(cabReservationService.searchStops(prefix, limit));
+    }
+
+    @GetMapping("/stops/nearest")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getNearestStops(@RequestParam("lat") double latitude,
+                                    @RequestParam("lon") double longitude,
+                                    @RequestParam(value = "k", defaultValue = "10") int k) {
+        if (!(Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180)) {
+            return Response.badRequest().setErrors("The latitude must be within 90 and the longitude within 180 degrees.");
+        }
+        return Response
+                .ok()
+                .setPayload(cabReservationService.findNearestStops(latitude, longitude, k));
+    }
+
     @GetMapping("/tripsbystops")
     @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
     public Response getTripsByStops(@RequestBody @Valid GetTripSchedulesRequest getTripSchedulesRequest) {
-        List<TripDto> tripDtos = cabReservationService.getAvailableTripsBetweenStops(
+        List<TripDto> tripDtos = isRanked(getTripSchedulesRequest)
+                ? cabReservationService.getAvailableTripsBetweenStops(
+                getTripSchedulesRequest.getSourceStop(),
+                getTripSchedulesRequest.getDestinationStop(),
+                sortBy(getTripSchedulesRequest),
+                limit(getTripSchedulesRequest))
+                : cabReservationService.getAvailableTripsBetweenStops(
                 getTripSchedulesRequest.getSourceStop(),
                 getTripSchedulesRequest.getDestinationStop());
         if (!tripDtos.isEmpty()) {
@@ -59,10 +159,32 @@ public class CabReservationController {
                 .setErrors(String.format("No trips between source stop - '%s' and destination stop - '%s' are available at this time.", getTripSchedulesRequest.getSourceStop(), getTripSchedulesRequest.getDestinationStop()));
     }
 
+    @GetMapping("/itineraries")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getItineraries(@RequestBody @Valid ItinerarySearchRequest itinerarySearchRequest) {
+        List<ItineraryDto> itineraryDtos = cabReservationService.getItineraries(
+                itinerarySearchRequest.getSourceStop(),
+                itinerarySearchRequest.getDestinationStop(),
+                itinerarySearchRequest.getMaxLegs(),
+                itinerarySearchRequest.getSortBy());
+        if (!itineraryDtos.isEmpty()) {
+            return Response.ok().setPayload(itineraryDtos);
+        }
+        return Response.notFound()
+                .setErrors(String.format("No connections between source stop - '%s' and destination stop - '%s' are available at this time.", itinerarySearchRequest.getSourceStop(), itinerarySearchRequest.getDestinationStop()));
+    }
+
     @GetMapping("/tripschedules")
     @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
     public Response getTripSchedules(@RequestBody @Valid GetTripSchedulesRequest getTripSchedulesRequest) {
-        List<TripScheduleDto> tripScheduleDtos = cabReservationService.getAvailableTripSchedules(
+        List<TripScheduleDto> tripScheduleDtos = isRanked(getTripSchedulesRequest)
+                ? cabReservationService.getAvailableTripSchedules(
+                getTripSchedulesRequest.getSourceStop(),
+                getTripSchedulesRequest.getDestinationStop(),
+                DateUtils.formattedDate(getTripSchedulesRequest.getTripDate()),
+                sortBy(getTripSchedulesRequest),
+                limit(getTripSchedulesRequest))
+                : cabReservationService.getAvailableTripSchedules(
                 getTripSchedulesRequest.getSourceStop(),
                 getTripSchedulesRequest.getDestinationStop(),
                 DateUtils.formattedDate(getTripSchedulesRequest.getTripDate()));
@@ -73,9 +195,49 @@ public class CabReservationController {
                 .setErrors(String.format("No trips between source stop - '%s' and destination stop - '%s' on date - '%s' are available at this time.", getTripSchedulesRequest.getSourceStop(), getTripSchedulesRequest.getDestinationStop(), DateUtils.formattedDate(getTripSchedulesRequest.getTripDate())));
     }
 
+    @GetMapping("/tripschedules/calendar")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getAvailabilityCalendar(@RequestBody @Valid GetTripSchedulesRangeRequest getTripSchedulesRangeRequest) {
+        String fromDate = DateUtils.formattedDate(getTripSchedulesRangeRequest.getFromDate());
+        String toDate = DateUtils.formattedDate(getTripSchedulesRangeRequest.getToDate());
+        int days = DateCodec.parse(toDate) - DateCodec.parse(fromDate) + 1;
+        if (days < 1 || days > MAX_CALENDAR_DAYS) {
+            return Response.badRequest().setErrors(String.format("The date range must cover between 1 and %d days.", MAX_CALENDAR_DAYS));
+        }
+        return Response
+                .ok()
+                .setPayload(cabReservationService.getAvailabilityCalendar(
+                        getTripSchedulesRangeRequest.getSourceStop(),
+                        getTripSchedulesRangeRequest.getDestinationStop(),
+                        fromDate,
+                        toDate));
+    }
+
+    @GetMapping("/tripschedules/range")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getTripSchedulesInRange(@RequestBody @Valid GetTripSchedulesRangeRequest getTripSchedulesRangeRequest) {
+        String fromDate = DateUtils.formattedDate(getTripSchedulesRangeRequest.getFromDate());
+        String toDate = DateUtils.formattedDate(getTripSchedulesRangeRequest.getToDate());
+        int days = DateCodec.parse(toDate) - DateCodec.parse(fromDate) + 1;
+        if (days < 1 || days > MAX_SEARCH_DAYS) {
+            return Response.badRequest().setErrors(String.format("The date range must cover between 1 and %d days.", MAX_SEARCH_DAYS));
+        }
+        Map<String, List<TripScheduleDto>> tripScheduleDtos = cabReservationService.getAvailableTripSchedules(
+                getTripSchedulesRangeRequest.getSourceStop(),
+                getTripSchedulesRangeRequest.getDestinationStop(),
+                fromDate,
+                toDate);
+        if (!tripScheduleDtos.isEmpty()) {
+            return Response.ok().setPayload(tripScheduleDtos);
+        }
+        return Response.notFound()
+                .setErrors(String.format("No trips between source stop - '%s' and destination stop - '%s' from date - '%s' to date - '%s' are available at this time.", getTripSchedulesRangeRequest.getSourceStop(), getTripSchedulesRangeRequest.getDestinationStop(), fromDate, toDate));
+    }
+
     @PostMapping("/bookticket")
     @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
-    public Response bookTicket(@RequestBody @Valid BookTicketRequest bookTicketRequest) {
+    public Response bookTicket(@RequestBody @Valid BookTicketRequest bookTicketRequest,
+                               @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         String email = (String) auth.getPrincipal();
         Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
@@ -86,8 +248,15 @@ public class CabReservationController {
                 Optional<TripScheduleDto> tripScheduleDto = Optional
                         .ofNullable(cabReservationService.getTripSchedule(tripDto.get(), DateUtils.formattedDate(bookTicketRequest.getTripDate()), true));
                 if (tripScheduleDto.isPresent()) {
-                    Optional<TicketDto> ticketDto = Optional
-                            .ofNullable(cabReservationService.bookTicket(tripScheduleDto.get(), userDto.get()));
+                    Optional<TicketDto> ticketDto;
+                    if (idempotencyKey != null) {
+                        ticketDto = Optional.ofNullable(cabReservationService.bookTicket(tripScheduleDto.get(), userDto.get(),
+                                bookTicketRequest.getSeatNumber(), idempotencyKey));
+                    } else {
+                        ticketDto = Optional.ofNullable(bookTicketRequest.getSeatNumber() != null
+                                ? cabReservationService.bookSeat(tripScheduleDto.get(), userDto.get(), bookTicketRequest.getSeatNumber())
+                                : cabReservationService.bookTicket(tripScheduleDto.get(), userDto.get()));
+                    }
                     if (ticketDto.isPresent()) {
                         return Response.ok().setPayload(ticketDto.get());
                     }
@@ -97,4 +266,188 @@ public class CabReservationController {
         return Response.badRequest().setErrors("Unable to process ticket booking.");
     }
 
+    @PostMapping("/booktickets")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response bookTickets(@RequestBody @Valid BookTicketsRequest bookTicketsRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            Optional<TripDto> tripDto = Optional
+                    .ofNullable(cabReservationService.getTripById(bookTicketsRequest.getTripID()));
+            if (tripDto.isPresent()) {
+                Optional<TripScheduleDto> tripScheduleDto = Optional
+                        .ofNullable(cabReservationService.getTripSchedule(tripDto.get(), DateUtils.formattedDate(bookTicketsRequest.getTripDate()), true));
+                if (tripScheduleDto.isPresent()) {
+                    List<TicketDto> ticketDtos = cabReservationService.bookTickets(tripScheduleDto.get(), userDto.get(),
+                            bookTicketsRequest.getSeats(), bookTicketsRequest.getPassengerEmails());
+                    if (!ticketDtos.isEmpty()) {
+                        return Response.ok().setPayload(ticketDtos);
+                    }
+                }
+            }
+        }
+        return Response.badRequest().setErrors("Unable to process ticket booking.");
+    }
+
+    @PostMapping("/holdseats")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response holdSeats(@RequestBody @Valid BookTicketsRequest bookTicketsRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            Optional<TripDto> tripDto = Optional
+                    .ofNullable(cabReservationService.getTripById(bookTicketsRequest.getTripID()));
+            if (tripDto.isPresent()) {
+                Optional<TripScheduleDto> tripScheduleDto = Optional
+                        .ofNullable(cabReservationService.getTripSchedule(tripDto.get(), DateUtils.formattedDate(bookTicketsRequest.getTripDate()), true));
+                if (tripScheduleDto.isPresent()) {
+                    return Response.ok().setPayload(cabReservationService.holdSeats(tripScheduleDto.get(), userDto.get(),
+                            bookTicketsRequest.getSeats(), bookTicketsRequest.getPassengerEmails()));
+                }
+            }
+        }
+        return Response.badRequest().setErrors("Unable to hold seats.");
+    }
+
+    @PostMapping("/confirmhold")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response confirmHold(@RequestBody @Valid SeatHoldRequest seatHoldRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            return Response.ok().setPayload(cabReservationService.confirmHold(seatHoldRequest.getHoldId(), userDto.get()));
+        }
+        return Response.badRequest().setErrors("Unable to process ticket booking.");
+    }
+
+    @PostMapping("/releasehold")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response releaseHold(@RequestBody @Valid SeatHoldRequest seatHoldRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            cabReservationService.releaseHold(seatHoldRequest.getHoldId(), userDto.get());
+            return Response.ok();
+        }
+        return Response.badRequest().setErrors("Unable to release seat hold.");
+    }
+
+    @PostMapping("/cancelticket")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response cancelTicket(@RequestBody @Valid CancelTicketRequest cancelTicketRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            return Response.ok().setPayload(cabReservationService.cancelTicket(cancelTicketRequest.getTicketId(), userDto.get()));
+        }
+        return Response.badRequest().setErrors("Unable to cancel ticket.");
+    }
+
+    @PostMapping("/joinwaitlist")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response joinWaitlist(@RequestBody @Valid BookTicketRequest bookTicketRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            Optional<TripDto> tripDto = Optional
+                    .ofNullable(cabReservationService.getTripById(bookTicketRequest.getTripID()));
+            if (tripDto.isPresent()) {
+                Optional<TripScheduleDto> tripScheduleDto = Optional
+                        .ofNullable(cabReservationService.getTripSchedule(tripDto.get(), DateUtils.formattedDate(bookTicketRequest.getTripDate()), true));
+                if (tripScheduleDto.isPresent()) {
+                    return Response.ok().setPayload(cabReservationService.joinWaitlist(tripScheduleDto.get(), userDto.get()));
+                }
+            }
+        }
+        return Response.badRequest().setErrors("Unable to join the waitlist.");
+    }
+
+    @PostMapping("/booktickets/async")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public ResponseEntity<Response> bookTicketsAsync(@RequestBody @Valid BookTicketsRequest bookTicketsRequest) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<UserDto> userDto = Optional.ofNullable(userService.findUserByEmail(email));
+        if (userDto.isPresent()) {
+            //fail fast on what the synchronous booking would reject, before accepting the booking
+            TripDto tripDto = cabReservationService.getTripById(bookTicketsRequest.getTripID());
+            TripScheduleDto tripScheduleDto = cabReservationService.getTripSchedule(tripDto,
+                    DateUtils.formattedDate(bookTicketsRequest.getTripDate()), true);
+            int seats = bookTicketsRequest.getPassengerEmails() == null || bookTicketsRequest.getPassengerEmails().isEmpty()
+                    ? bookTicketsRequest.getSeats()
+                    : bookTicketsRequest.getPassengerEmails().size();
+            if (tripScheduleDto.getAvailableSeats() < seats) {
+                return new ResponseEntity<>(Response.badRequest().setErrors("Not enough seats available."), HttpStatus.BAD_REQUEST);
+            }
+            Optional<BookingStatusDto> bookingStatusDto = Optional.ofNullable(bookingPipeline.submit(tripScheduleDto,
+                    userDto.get(), bookTicketsRequest.getSeats(), bookTicketsRequest.getPassengerEmails()));
+            if (bookingStatusDto.isPresent()) {
+                return new ResponseEntity<>(Response.accepted().setPayload(bookingStatusDto.get()), HttpStatus.ACCEPTED);
+            }
+            return new ResponseEntity<>(Response.exception().setErrors("Too many bookings in progress, retry later."), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return new ResponseEntity<>(Response.badRequest().setErrors("Unable to process ticket booking."), HttpStatus.BAD_REQUEST);
+    }
+
+    @GetMapping("/bookings/{reference}")
+    @ApiOperation(value = "", authorizations = {@Authorization(value = "apiKey")})
+    public Response getBookingStatus(@PathVariable String reference) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String email = (String) auth.getPrincipal();
+        Optional<BookingStatusDto> bookingStatusDto = Optional.ofNullable(bookingPipeline.status(reference, email));
+        if (bookingStatusDto.isPresent()) {
+            return Response.ok().setPayload(bookingStatusDto.get());
+        }
+        return Response.notFound().setErrors(String.format("No booking with reference - '%s' is known.", reference));
+    }
+
+    private static boolean isRanked(GetTripSchedulesRequest getTripSchedulesRequest) {
+        return getTripSchedulesRequest.getSortBy() != null || getTripSchedulesRequest.getLimit() != null;
+    }
+
+    private static SearchSort sortBy(GetTripSchedulesRequest getTripSchedulesRequest) {
+        return Optional.ofNullable(getTripSchedulesRequest.getSortBy()).orElse(SearchSort.FASTEST);
+    }
+
+    private static int limit(GetTripSchedulesRequest getTripSchedulesRequest) {
+        return Optional.ofNullable(getTripSchedulesRequest.getLimit()).orElse(DEFAULT_SEARCH_LIMIT);
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Writes the items handed out by the producer as one JSON array, each item is serialized and
+     * flushed as it arrives instead of collecting the whole result first
+     *
+     * @param outputStream
+     * @param producer
+     * @param <T>
+     * @throws IOException
+     */
+    private <T> void writeJsonArray(OutputStream outputStream, Consumer<Consumer<T>> producer) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartArray();
+            try {
+                producer.accept(item -> {
+                    try {
+                        generator.writeObject(item);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            generator.writeEndArray();
+        }
+    }
+
 }
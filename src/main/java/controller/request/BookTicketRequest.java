@@ -12,6 +12,7 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.PositiveOrZero;
 import java.util.Date;
 
 
@@ -30,4 +31,7 @@ public class BookTicketRequest {
 	    @Temporal(TemporalType.DATE)
 	    private Date tripDate;
 
+	    @PositiveOrZero
+	    private Integer seatNumber;
+
 }
@@ -0,0 +1,44 @@
+package controller.request;
+
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.Date;
+import java.util.List;
+
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BookTicketsRequest {
+
+	    @NotEmpty(message = "{constraints.NotEmpty.message}")
+	    private String tripID;
+
+	    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
+	    @NotNull(message = "{constraints.NotEmpty.message}")
+	    @Temporal(TemporalType.DATE)
+	    private Date tripDate;
+
+	    @Min(1)
+	    @Max(50)
+	    private int seats = 1;
+
+	    @Size(max = 50)
+	    private List<String> passengerEmails;
+
+}
@@ -0,0 +1,23 @@
+package controller.request;
+
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import javax.validation.constraints.NotEmpty;
+
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CancelTicketRequest {
+
+	    @NotEmpty(message = "{constraints.NotEmpty.message}")
+	    private String ticketId;
+
+}
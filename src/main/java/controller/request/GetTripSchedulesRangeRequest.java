@@ -0,0 +1,41 @@
+package controller.request;
+
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GetTripSchedulesRangeRequest {
+
+	    @NotEmpty(message = "{constraints.NotEmpty.message}")
+	    private String sourceStop;
+
+	    @NotEmpty(message = "{constraints.NotEmpty.message}")
+	    private String destinationStop;
+
+	    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
+	    @NotNull(message = "{constraints.NotEmpty.message}")
+	    @Temporal(TemporalType.DATE)
+	    private Date fromDate;
+
+	    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
+	    @NotNull(message = "{constraints.NotEmpty.message}")
+	    @Temporal(TemporalType.DATE)
+	    private Date toDate;
+
+}
@@ -7,10 +7,13 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import service.search.SearchSort;
 
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Positive;
 import java.util.Date;
 
 
@@ -31,4 +34,10 @@ public class GetTripSchedulesRequest {
 	    @Temporal(TemporalType.DATE)
 	    private Date tripDate;
 
+	    private SearchSort sortBy;
+
+	    @Positive
+	    @Max(500)
+	    private Integer limit;
+
 }
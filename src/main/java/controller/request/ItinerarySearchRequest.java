@@ -0,0 +1,35 @@
+package controller.request;
+
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import service.search.RouteGraph;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ItinerarySearchRequest {
+
+	    @NotEmpty(message = "{constraints.NotEmpty.message}")
+	    private String sourceStop;
+
+	    @NotEmpty(message = "{constraints.NotEmpty.message}")
+	    private String destinationStop;
+
+	    @Min(1)
+	    @Max(3)
+	    private int maxLegs = 3;
+
+	    private RouteGraph.Criterion sortBy = RouteGraph.Criterion.TIME;
+
+}
@@ -9,6 +9,7 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
 import controller.command.AgencyFormCommand;
@@ -21,6 +22,7 @@ import dto.model.cab.CabDto;
 import dto.model.cab.StopDto;
 import dto.model.cab.TripDto;
 import dto.model.user.UserDto;
+import dto.response.CursorPage;
 import service.CabReservationService;
 import service.UserService;
 
@@ -31,6 +33,7 @@ import java.util.Set;
 
 @Controller
 public class DashboardController {
+    private static final int TRIPS_PAGE_SIZE = 100;
 	
 	@Autowired
     private UserService userService;
@@ -118,16 +121,17 @@ public class DashboardController {
     }
 
     @GetMapping(value = "/trip")
-    public ModelAndView tripDetails() {
+    public ModelAndView tripDetails(@RequestParam(value = "cursor", required = false) String cursor) {
         ModelAndView modelAndView = new ModelAndView("trip");
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         UserDto userDto = userService.findUserByEmail(auth.getName());
         AgencyDto agencyDto = cabReservationService.getAgency(userDto);
         Set<StopDto> stops = cabReservationService.getAllStops();
-        List<TripDto> trips = cabReservationService.getAgencyTrips(agencyDto.getCode());
+        CursorPage<TripDto> trips = cabReservationService.getAgencyTrips(agencyDto.getCode(), cursor, TRIPS_PAGE_SIZE);
         modelAndView.addObject("agency", agencyDto);
         modelAndView.addObject("stops", stops);
-        modelAndView.addObject("trips", trips);
+        modelAndView.addObject("trips", trips.getItems());
+        modelAndView.addObject("nextCursor", trips.getNextCursor());
         modelAndView.addObject("tripFormData", new TripFormCommand());
         modelAndView.addObject("userName", userDto.getFullName());
         return modelAndView;
@@ -140,7 +144,7 @@ public class DashboardController {
         UserDto userDto = userService.findUserByEmail(auth.getName());
         AgencyDto agencyDto = cabReservationService.getAgency(userDto);
         Set<StopDto> stops = cabReservationService.getAllStops();
-        List<TripDto> trips = cabReservationService.getAgencyTrips(agencyDto.getCode());
+        List<TripDto> trips = cabReservationService.getAgencyTrips(agencyDto.getCode(), null, TRIPS_PAGE_SIZE).getItems();
 
         modelAndView.addObject("stops", stops);
         modelAndView.addObject("agency", agencyDto);
@@ -158,7 +162,7 @@ public class DashboardController {
                         .setAgencyCode(agencyDto.getCode());
                 cabReservationService.addTrip(tripDto);
 
-                trips = cabReservationService.getAgencyTrips(agencyDto.getCode());
+                trips = cabReservationService.getAgencyTrips(agencyDto.getCode(), null, TRIPS_PAGE_SIZE).getItems();
                 modelAndView.addObject("trips", trips);
                 modelAndView.addObject("tripFormData", new TripFormCommand());
             } catch (Exception ex) {
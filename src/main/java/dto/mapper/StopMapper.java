@@ -0,0 +1,19 @@
+package dto.mapper;
+
+import dto.model.cab.StopDto;
+import model.cab.Stop;
+
+public class StopMapper {
+    public static StopDto toStopDto(Stop stop) {
+        StopDto stopDto = new StopDto()
+                .setCode(stop.getCode())
+                .setName(stop.getName())
+                .setDetail(stop.getDetail());
+        if (stop.getLocation() != null) {
+            stopDto.setLatitude(stop.getLocation().getY())
+                    .setLongitude(stop.getLocation().getX());
+        }
+        return stopDto;
+    }
+
+}
@@ -1,20 +1,36 @@
 package dto.mapper;
 
 import dto.model.cab.TicketDto;
+import model.cab.PassengerSnapshot;
 import model.cab.Ticket;
+import model.cab.TripSnapshot;
 
 public class TicketMapper {
 	public static TicketDto toTicketDto(Ticket ticket) {
-        return new TicketDto()
+        TicketDto ticketDto = new TicketDto()
                 .setId(ticket.getId())
-                .setCabCode(ticket.getTripSchedule().getTripDetail().getCab().getCode())
                 .setSeatNumber(ticket.getSeatNumber())
-                .setSourceStop(ticket.getTripSchedule().getTripDetail().getSourceStop().getName())
-                .setDestinationStop(ticket.getTripSchedule().getTripDetail().getDestStop().getName())
-                .setCancellable(false)
-                .setJourneyDate(ticket.getJourneyDate())
-                .setPassengerName(ticket.getPassenger().getFullName())
-                .setPassengerMobileNumber(ticket.getPassenger().getMobileNumber());
+                .setCancellable(ticket.isCancellable())
+                .setCancelled(ticket.isCancelled())
+                .setExpired(ticket.isExpired())
+                .setJourneyDate(ticket.getJourneyDate());
+        //tickets written before the snapshots were embedded fall back to their references
+        TripSnapshot trip = ticket.getTripSnapshot();
+        if (trip != null) {
+            ticketDto.setCabCode(trip.getCabCode())
+                    .setSourceStop(trip.getSourceStopName())
+                    .setDestinationStop(trip.getDestStopName());
+        } else {
+            ticketDto.setCabCode(ticket.getTripSchedule().getTripDetail().getCab().getCode())
+                    .setSourceStop(ticket.getTripSchedule().getTripDetail().getSourceStop().getName())
+                    .setDestinationStop(ticket.getTripSchedule().getTripDetail().getDestStop().getName());
+        }
+        PassengerSnapshot passenger = ticket.getPassengerSnapshot() != null
+                ? ticket.getPassengerSnapshot()
+                : PassengerSnapshot.of(ticket.getPassenger());
+        return ticketDto
+                .setPassengerName(passenger.getFullName())
+                .setPassengerMobileNumber(passenger.getMobileNumber());
     }
 
 }
@@ -2,10 +2,14 @@ package dto.mapper;
 
 import dto.model.cab.TripDto;
 import model.cab.Trip;
+import model.cab.TripSnapshot;
 
 public class TripMapper {
 	
 	public static TripDto toTripDto(Trip trip) {
+        if (trip.getSnapshot() != null) {
+            return toTripDto(trip.getSnapshot()).setId(trip.getId());
+        }
         return new TripDto()
                 .setId(trip.getId())
                 .setAgencyCode(trip.getAgency().getCode())
@@ -18,4 +22,31 @@ public class TripMapper {
                 .setFare(trip.getFare());
     }
 
+    public static TripDto toTripDto(TripSnapshot tripSnapshot) {
+        return new TripDto()
+                .setId(tripSnapshot.getTripId())
+                .setAgencyCode(tripSnapshot.getAgencyCode())
+                .setSourceStopCode(tripSnapshot.getSourceStopCode())
+                .setSourceStopName(tripSnapshot.getSourceStopName())
+                .setDestinationStopCode(tripSnapshot.getDestStopCode())
+                .setDestinationStopName(tripSnapshot.getDestStopName())
+                .setCabCode(tripSnapshot.getCabCode())
+                .setJourneyTime(tripSnapshot.getJourneyTime())
+                .setFare(tripSnapshot.getFare());
+    }
+
+    public static TripSnapshot toTripSnapshot(TripDto tripDto, int cabCapacity) {
+        return new TripSnapshot()
+                .setTripId(tripDto.getId())
+                .setFare(tripDto.getFare())
+                .setJourneyTime(tripDto.getJourneyTime())
+                .setSourceStopCode(tripDto.getSourceStopCode())
+                .setSourceStopName(tripDto.getSourceStopName())
+                .setDestStopCode(tripDto.getDestinationStopCode())
+                .setDestStopName(tripDto.getDestinationStopName())
+                .setCabCode(tripDto.getCabCode())
+                .setCabCapacity(cabCapacity)
+                .setAgencyCode(tripDto.getAgencyCode());
+    }
+
 }
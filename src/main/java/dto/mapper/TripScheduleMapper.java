@@ -1,5 +1,6 @@
 package dto.mapper;
 
+import dto.model.cab.TripDto;
 import dto.model.cab.TripScheduleDto;
 import model.cab.Trip;
 import model.cab.TripSchedule;
@@ -7,10 +8,14 @@ import model.cab.TripSchedule;
 public class TripScheduleMapper {
 	
 	public static TripScheduleDto toTripScheduleDto(TripSchedule tripSchedule) {
+        if (tripSchedule.getTripSnapshot() != null) {
+            return toTripScheduleDto(tripSchedule, TripMapper.toTripDto(tripSchedule.getTripSnapshot()));
+        }
         Trip tripDetails = tripSchedule.getTripDetail();
         return new TripScheduleDto()
                 .setId(tripSchedule.getId())
                 .setTripId(tripDetails.getId())
+                .setTripDate(tripSchedule.getTripDate())
                 .setCabCode(tripDetails.getCab().getCode())
                 .setAvailableSeats(tripSchedule.getAvailableSeats())
                 .setFare(tripDetails.getFare())
@@ -19,4 +24,24 @@ public class TripScheduleMapper {
                 .setDestinationStop(tripDetails.getDestStop().getName());
     }
 
+    /**
+     * Maps a schedule whose trip was not resolved, the trip details come from the given trip instead
+     *
+     * @param tripSchedule
+     * @param tripDto
+     * @return
+     */
+    public static TripScheduleDto toTripScheduleDto(TripSchedule tripSchedule, TripDto tripDto) {
+        return new TripScheduleDto()
+                .setId(tripSchedule.getId())
+                .setTripId(tripDto.getId())
+                .setTripDate(tripSchedule.getTripDate())
+                .setCabCode(tripDto.getCabCode())
+                .setAvailableSeats(tripSchedule.getAvailableSeats())
+                .setFare(tripDto.getFare())
+                .setJourneyTime(tripDto.getJourneyTime())
+                .setSourceStop(tripDto.getSourceStopName())
+                .setDestinationStop(tripDto.getDestinationStopName());
+    }
+
 }
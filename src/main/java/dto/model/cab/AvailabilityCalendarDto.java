@@ -0,0 +1,36 @@
+package dto.model.cab;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+
+/**
+ * Seat availability of a stop pair over consecutive days. Entry i of both arrays is the day
+ * fromDate plus i days, a min fare of -1 means no trip has a seat left that day.
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@ToString
+@JsonInclude(value = JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AvailabilityCalendarDto {
+
+    private String sourceStop;
+
+    private String destinationStop;
+
+    private String fromDate;
+
+    private int days;
+
+    private int[] minFares;
+
+    private int[] availableSeats;
+}
@@ -0,0 +1,37 @@
+package dto.model.cab;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+import java.util.Date;
+import java.util.List;
+
+
+@Getter
+@Setter
+@Accessors(chain = true)
+@NoArgsConstructor
+@ToString
+@JsonInclude(value = JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BookingStatusDto {
+
+    private String reference;
+
+    private Status status;
+
+    private Date submittedAt;
+
+    private List<TicketDto> tickets;
+
+    private String error;
+
+    public enum Status {
+        PENDING, CONFIRMED, FAILED
+    }
+}
@@ -22,6 +22,8 @@ public class StopDto implements Comparable {
 	private String code;
     private String name;
     private String detail;
+    private Double latitude;
+    private Double longitude;
 
     @Override
     public int compareTo(Object o) {
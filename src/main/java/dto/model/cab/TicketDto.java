@@ -26,6 +26,10 @@ public class TicketDto {
 
     private boolean cancellable;
 
+    private boolean cancelled;
+
+    private boolean expired;
+
     private String journeyDate;
 
     private String sourceStop;
@@ -37,6 +37,12 @@ public class Response<T> {
         return response;
     }
 
+    public static <T> Response<T> accepted() {
+        Response<T> response = new Response<>();
+        response.setStatus(Status.ACCEPTED);
+        return response;
+    }
+
     public static <T> Response<T> unauthorized() {
         Response<T> response = new Response<>();
         response.setStatus(Status.UNAUTHORIZED);
@@ -88,7 +94,7 @@ public class Response<T> {
     }
 
     public enum Status {
-        OK, BAD_REQUEST, UNAUTHORIZED, VALIDATION_EXCEPTION, EXCEPTION, WRONG_CREDENTIALS, ACCESS_DENIED, NOT_FOUND, DUPLICATE_ENTITY
+        OK, ACCEPTED, BAD_REQUEST, UNAUTHORIZED, VALIDATION_EXCEPTION, EXCEPTION, WRONG_CREDENTIALS, ACCESS_DENIED, NOT_FOUND, DUPLICATE_ENTITY
     }
 
     @Getter
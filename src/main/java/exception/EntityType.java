@@ -8,5 +8,6 @@ public enum EntityType {
     STOP,
     TICKET,
     TRIP,
-    TRIPSCHEDULE
+    TRIPSCHEDULE,
+    HOLD
 }
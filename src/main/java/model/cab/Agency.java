@@ -7,6 +7,7 @@ import lombok.experimental.Accessors;
 import model.user.User;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.IndexDirection;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.DBRef;
@@ -20,6 +21,7 @@ import java.util.Set;
 @NoArgsConstructor
 @Accessors(chain = true)
 @Document(collection = "agency")
+@CompoundIndex(name = "owner", def = "{'owner': 1}")
 public class Agency {
     @Id
     private String id;
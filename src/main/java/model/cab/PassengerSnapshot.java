@@ -0,0 +1,32 @@
+package model.cab;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import model.user.User;
+
+
+/**
+ * Copy of the passenger details shown on a ticket, embedded in the ticket document.
+ * Kept in sync by service.snapshot.SnapshotUpdater.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Accessors(chain = true)
+public class PassengerSnapshot {
+    private String email;
+
+    private String fullName;
+
+    private String mobileNumber;
+
+    public static PassengerSnapshot of(User user) {
+        return new PassengerSnapshot()
+                .setEmail(user.getEmail())
+                .setFullName(user.getFullName())
+                .setMobileNumber(user.getMobileNumber());
+    }
+}
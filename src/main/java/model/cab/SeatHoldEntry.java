@@ -0,0 +1,39 @@
+package model.cab;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+
+/**
+ * Persisted copy of an open seat hold. Whoever removes the document, the confirmation, the
+ * expiry or the sweep of lapsed holds, owns the held seats, so they are handed out exactly once
+ * even when the process holding the hold in memory died.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Accessors(chain = true)
+@Document(collection = "seathold")
+public class SeatHoldEntry {
+    @Id
+    private String id;
+
+    private String ownerEmail;
+
+    private String tripScheduleId;
+
+    private int[] seatNumbers;
+
+    private List<String> passengerIds;
+
+    @Indexed
+    private Date expiresAt;
+}
@@ -7,8 +7,13 @@ import lombok.experimental.Accessors;
 import model.user.User;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import util.DateCodec;
 
 
 @Getter
@@ -16,6 +21,11 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @NoArgsConstructor
 @Accessors(chain = true)
 @Document(collection = "ticket")
+@CompoundIndexes({
+        @CompoundIndex(name = "passenger", def = "{'passenger': 1}"),
+        @CompoundIndex(name = "trip_snapshot", def = "{'tripSnapshot.tripId': 1}"),
+        @CompoundIndex(name = "journey_date", def = "{'journeyDate': 1}")
+})
 public class Ticket {
     @Id
     private String id;
@@ -24,11 +34,38 @@ public class Ticket {
 
     private boolean cancellable;
 
-    private String journeyDate;
+    private boolean cancelled;
 
-    @DBRef
+    /**
+     * Set once the journey date passed, expired tickets are kept as booking history
+     */
+    private boolean expired;
+
+    /**
+     * Day of the journey in days since 1970-01-01, see util.DateCodec
+     */
+    @Field("journeyDate")
+    private int journeyDay;
+
+    @Indexed(unique = true, sparse = true)
+    private String idempotencyKey;
+
+    @DBRef(lazy = true)
     private TripSchedule tripSchedule;
 
-    @DBRef
+    @DBRef(lazy = true)
     private User passenger;
+
+    private TripSnapshot tripSnapshot;
+
+    private PassengerSnapshot passengerSnapshot;
+
+    public String getJourneyDate() {
+        return DateCodec.format(journeyDay);
+    }
+
+    public Ticket setJourneyDate(String journeyDate) {
+        this.journeyDay = DateCodec.parse(journeyDate);
+        return this;
+    }
 }
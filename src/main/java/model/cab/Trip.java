@@ -5,6 +5,8 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -14,6 +16,10 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @NoArgsConstructor
 @Accessors(chain = true)
 @Document(collection = "trip")
+@CompoundIndexes({
+        @CompoundIndex(name = "stops_cab", def = "{'sourceStop': 1, 'destStop': 1, 'cab': 1}"),
+        @CompoundIndex(name = "agency_id", def = "{'agency': 1, '_id': 1}")
+})
 public class Trip {
     @Id
     private String id;
@@ -22,16 +28,22 @@ public class Trip {
 
     private int journeyTime;
 
-    @DBRef
+    @DBRef(lazy = true)
     private Stop sourceStop;
 
-    @DBRef
+    @DBRef(lazy = true)
     private Stop destStop;
 
-    @DBRef
+    @DBRef(lazy = true)
     private Cab cab;
 
-    @DBRef
+    @DBRef(lazy = true)
     private Agency agency;
 
+    //what readers need of the references above, see TripSnapshot
+    private TripSnapshot snapshot;
+
+    public int getCabCapacity() {
+        return snapshot != null ? snapshot.getCabCapacity() : cab.getCapacity();
+    }
 }
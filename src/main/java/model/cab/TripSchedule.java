@@ -5,8 +5,12 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import util.DateCodec;
 
 import java.util.List;
 
@@ -16,17 +20,54 @@ import java.util.List;
 @NoArgsConstructor
 @Accessors(chain = true)
 @Document(collection = "tripschedule")
+@CompoundIndexes({
+        @CompoundIndex(name = "trip_date", def = "{'tripDetail': 1, 'tripDate': 1}", unique = true),
+        @CompoundIndex(name = "trip_snapshot", def = "{'tripSnapshot.tripId': 1}")
+})
 public class TripSchedule {
     @Id
     private String id;
 
-    @DBRef
+    @DBRef(lazy = true)
     private Trip tripDetail;
 
+    private TripSnapshot tripSnapshot;
+
     @DBRef(lazy = true)
     private List<Ticket> ticketsSold;
 
-    private String tripDate;
+    /**
+     * Day of the trip in days since 1970-01-01, see util.DateCodec
+     */
+    @Field("tripDate")
+    private int tripDay;
 
     private int availableSeats;
+
+    /**
+     * Seat occupancy, bit n set means seat n is taken. See util.SeatBitmap
+     */
+    private long[] seatMap;
+
+    /**
+     * Last position handed out on the waitlist of this schedule
+     */
+    private long waitlistSequence;
+
+    public String getTripDate() {
+        return DateCodec.format(tripDay);
+    }
+
+    public TripSchedule setTripDate(String tripDate) {
+        this.tripDay = DateCodec.parse(tripDate);
+        return this;
+    }
+
+    public String getTripId() {
+        return tripSnapshot != null ? tripSnapshot.getTripId() : tripDetail.getId();
+    }
+
+    public int getCabCapacity() {
+        return tripSnapshot != null ? tripSnapshot.getCabCapacity() : tripDetail.getCabCapacity();
+    }
 }
@@ -0,0 +1,55 @@
+package model.cab;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+
+/**
+ * Copy of the trip details a trip, schedule or ticket needs to be shown, embedded in their
+ * documents so reading them does not resolve the DBRef chain down to stops, cab and agency.
+ * Kept in sync by service.snapshot.SnapshotUpdater.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Accessors(chain = true)
+public class TripSnapshot {
+    private String tripId;
+
+    private int fare;
+
+    private int journeyTime;
+
+    private String sourceStopCode;
+
+    private String sourceStopName;
+
+    private String destStopCode;
+
+    private String destStopName;
+
+    private String cabCode;
+
+    private int cabCapacity;
+
+    private String agencyCode;
+
+    public static TripSnapshot of(Trip trip) {
+        if (trip.getSnapshot() != null) {
+            return trip.getSnapshot();
+        }
+        return new TripSnapshot()
+                .setTripId(trip.getId())
+                .setFare(trip.getFare())
+                .setJourneyTime(trip.getJourneyTime())
+                .setSourceStopCode(trip.getSourceStop().getCode())
+                .setSourceStopName(trip.getSourceStop().getName())
+                .setDestStopCode(trip.getDestStop().getCode())
+                .setDestStopName(trip.getDestStop().getName())
+                .setCabCode(trip.getCab().getCode())
+                .setCabCapacity(trip.getCab().getCapacity())
+                .setAgencyCode(trip.getAgency().getCode());
+    }
+}
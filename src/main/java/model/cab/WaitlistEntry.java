@@ -0,0 +1,35 @@
+package model.cab;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+
+/**
+ * A passenger waiting for a seat on a full trip schedule. Entries only carry ids and the
+ * position in line, the schedule's waitlist is read in position order straight off the index.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Accessors(chain = true)
+@Document(collection = "waitlist")
+@CompoundIndexes({
+        @CompoundIndex(name = "schedule_position", def = "{'tripScheduleId': 1, 'position': 1}"),
+        @CompoundIndex(name = "schedule_passenger", def = "{'tripScheduleId': 1, 'passengerId': 1}", unique = true)
+})
+public class WaitlistEntry {
+    @Id
+    private String id;
+
+    private String tripScheduleId;
+
+    private String passengerId;
+
+    private long position;
+}
@@ -0,0 +1,9 @@
+package repository.cab;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import model.cab.SeatHoldEntry;
+
+
+public interface SeatHoldRepository extends MongoRepository<SeatHoldEntry, String>, SeatHoldRepositoryCustom {
+}
@@ -0,0 +1,34 @@
+package repository.cab;
+
+import model.cab.SeatHoldEntry;
+
+import java.util.Date;
+
+
+public interface SeatHoldRepositoryCustom {
+    /**
+     * Atomically removes a hold.
+     *
+     * @param id
+     * @return the removed hold, or null if it was already taken or released
+     */
+    SeatHoldEntry take(String id);
+
+    /**
+     * Atomically removes a hold of the given owner that has not lapsed yet.
+     *
+     * @param id
+     * @param ownerEmail
+     * @param now
+     * @return the removed hold, or null if there is no such open hold
+     */
+    SeatHoldEntry takeOpen(String id, String ownerEmail, Date now);
+
+    /**
+     * Atomically removes the hold that lapsed first.
+     *
+     * @param now
+     * @return the removed hold, or null if no hold lapsed before now
+     */
+    SeatHoldEntry pollLapsed(Date now);
+}
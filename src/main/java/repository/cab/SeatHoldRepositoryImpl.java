@@ -0,0 +1,44 @@
+package repository.cab;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import model.cab.SeatHoldEntry;
+
+import java.util.Date;
+
+
+public class SeatHoldRepositoryImpl implements SeatHoldRepositoryCustom {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public SeatHoldEntry take(String id) {
+        return mongoTemplate.findAndRemove(Query.query(Criteria.where("id").is(id)), SeatHoldEntry.class);
+    }
+
+    @Override
+    public SeatHoldEntry takeOpen(String id, String ownerEmail, Date now) {
+        Query query = Query.query(Criteria.where("id").is(id)
+                .and("ownerEmail").is(ownerEmail)
+                .and("expiresAt").gt(now));
+        return mongoTemplate.findAndRemove(query, SeatHoldEntry.class);
+    }
+
+    /**
+     * Uses findAndRemove over the expiresAt index, so concurrent sweeps on several nodes each
+     * release a different hold.
+     *
+     * @param now
+     * @return
+     */
+    @Override
+    public SeatHoldEntry pollLapsed(Date now) {
+        Query query = Query.query(Criteria.where("expiresAt").lt(now))
+                .with(Sort.by(Sort.Direction.ASC, "expiresAt"));
+        return mongoTemplate.findAndRemove(query, SeatHoldEntry.class);
+    }
+}
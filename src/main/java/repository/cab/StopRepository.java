@@ -1,10 +1,21 @@
 package repository.cab;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import model.cab.Stop;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 
 public interface StopRepository extends MongoRepository<Stop, String> {
     Stop findByCode(String code);
+
+    List<Stop> findByCodeGreaterThan(String code, Pageable pageable);
+
+    Stream<Stop> streamAllByOrderByCodeAsc();
+
+    List<Stop> findByLocationNear(GeoJsonPoint location, Pageable pageable);
 }
@@ -5,5 +5,6 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import model.cab.Ticket;
 
 
-public interface TicketRepository extends MongoRepository<Ticket, Long> {
+public interface TicketRepository extends MongoRepository<Ticket, String>, TicketRepositoryCustom {
+    Ticket findByIdempotencyKey(String idempotencyKey);
 }
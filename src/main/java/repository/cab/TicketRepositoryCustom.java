@@ -0,0 +1,24 @@
+package repository.cab;
+
+import model.cab.Ticket;
+
+
+public interface TicketRepositoryCustom {
+    /**
+     * Atomically marks an upcoming ticket cancelled, provided it is cancellable and not cancelled yet.
+     *
+     * @param ticketId
+     * @param today   epoch day
+     * @return the cancelled ticket, or null if it was already cancelled, is in the past or is missing
+     */
+    Ticket markCancelled(String ticketId, int today);
+
+    /**
+     * Marks every ticket whose journey date is before the given day expired and closes its cancellation,
+     * cancelled tickets included. Tickets are never removed, they stay as booking history.
+     *
+     * @param today epoch day
+     * @return the number of tickets updated
+     */
+    long expireTicketsBefore(int today);
+}
@@ -0,0 +1,41 @@
+package repository.cab;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import model.cab.Ticket;
+
+
+public class TicketRepositoryImpl implements TicketRepositoryCustom {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Flips the ticket to cancelled in a single conditional findAndModify, so concurrent
+     * cancellations of the same ticket have exactly one winner and its seat is released once.
+     *
+     * @param ticketId
+     * @param today
+     * @return
+     */
+    @Override
+    public Ticket markCancelled(String ticketId, int today) {
+        Query query = new Query(Criteria.where("id").is(ticketId)
+                .and("cancellable").is(true)
+                .and("cancelled").ne(true)
+                .and("journeyDate").gte(today));
+        Update update = Update.update("cancelled", true).set("cancellable", false);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Ticket.class);
+    }
+
+    @Override
+    public long expireTicketsBefore(int today) {
+        Query query = new Query(Criteria.where("journeyDate").lt(today).and("expired").ne(true));
+        Update update = Update.update("expired", true).set("cancellable", false);
+        return mongoTemplate.updateMulti(query, update, Ticket.class).getModifiedCount();
+    }
+}
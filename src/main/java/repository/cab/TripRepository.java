@@ -10,7 +10,7 @@ import model.cab.Trip;
 import java.util.List;
 
 
-public interface TripRepository extends MongoRepository<Trip, String> {
+public interface TripRepository extends MongoRepository<Trip, String>, TripRepositoryCustom {
     Trip findBySourceStopAndDestStopAndCab(Stop source, Stop destination, Cab cab);
 
     List<Trip> findAllBySourceStopAndDestStop(Stop source, Stop destination);
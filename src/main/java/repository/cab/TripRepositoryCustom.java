@@ -0,0 +1,29 @@
+package repository.cab;
+
+import org.springframework.data.util.CloseableIterator;
+
+import model.cab.Trip;
+
+import java.util.List;
+
+
+public interface TripRepositoryCustom {
+    /**
+     * Returns a page of the trips of an agency in id order, only their ids are read
+     *
+     * @param agencyId
+     * @param afterId  the last id of the previous page, or null for the first page
+     * @param limit
+     * @return trips that only carry their id
+     */
+    List<Trip> findIdsByAgency(String agencyId, String afterId, int limit);
+
+    /**
+     * Streams the trips of an agency in id order from a Mongo cursor, only their ids are read.
+     * The iterator must be closed.
+     *
+     * @param agencyId
+     * @return trips that only carry their id
+     */
+    CloseableIterator<Trip> streamIdsByAgency(String agencyId);
+}
@@ -0,0 +1,52 @@
+package repository.cab;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import model.cab.Agency;
+import model.cab.Trip;
+
+import java.util.List;
+
+
+public class TripRepositoryImpl implements TripRepositoryCustom {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Keyset pagination on _id, every page is an index range scan whatever its depth, and the
+     * projection keeps the DBRefs of the trips from being resolved.
+     *
+     * @param agencyId
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<Trip> findIdsByAgency(String agencyId, String afterId, int limit) {
+        Criteria criteria = agencyCriteria(agencyId);
+        if (afterId != null) {
+            criteria.and("id").gt(afterId);
+        }
+        return mongoTemplate.find(idsQuery(criteria).limit(limit), Trip.class);
+    }
+
+    @Override
+    public CloseableIterator<Trip> streamIdsByAgency(String agencyId) {
+        return mongoTemplate.stream(idsQuery(agencyCriteria(agencyId)), Trip.class);
+    }
+
+    private Criteria agencyCriteria(String agencyId) {
+        return Criteria.where("agency").is(mongoTemplate.getConverter().toDBRef(new Agency().setId(agencyId), null));
+    }
+
+    private static Query idsQuery(Criteria criteria) {
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "id"));
+        query.fields().include("id");
+        return query;
+    }
+}
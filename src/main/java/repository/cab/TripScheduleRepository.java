@@ -6,6 +6,6 @@ import model.cab.Trip;
 import model.cab.TripSchedule;
 
 
-public interface TripScheduleRepository extends MongoRepository<TripSchedule, String> {
-    TripSchedule findByTripDetailAndTripDate(Trip tripDetail, String tripDate);
+public interface TripScheduleRepository extends MongoRepository<TripSchedule, String>, TripScheduleRepositoryCustom {
+    TripSchedule findByTripDetailAndTripDay(Trip tripDetail, int tripDay);
 }
@@ -0,0 +1,64 @@
+package repository.cab;
+
+import model.cab.TripSchedule;
+
+import java.util.Collection;
+import java.util.List;
+
+
+public interface TripScheduleRepositoryCustom {
+    /**
+     * Atomically takes the given seats of the schedule, provided none of them is taken yet.
+     *
+     * @param tripScheduleId
+     * @param seatNumbers
+     * @return the schedule after the seats were taken, or null if a seat was already taken or it is missing
+     */
+    TripSchedule claimSeats(String tripScheduleId, int[] seatNumbers);
+
+    /**
+     * Atomically gives the given seats of the schedule back, provided all of them are still taken.
+     *
+     * @param tripScheduleId
+     * @param seatNumbers
+     * @return the schedule after the seats were released, or null if a seat was not taken or it is missing
+     */
+    TripSchedule releaseSeats(String tripScheduleId, int[] seatNumbers);
+
+    /**
+     * Sets the seat bitmap of a schedule created before schedules carried one.
+     *
+     * @param tripScheduleId
+     * @param seatMap
+     */
+    void initSeatMap(String tripScheduleId, long[] seatMap);
+
+    /**
+     * Atomically hands out the next waitlist position of the schedule.
+     *
+     * @param tripScheduleId
+     * @return the position, or -1 if the schedule is missing
+     */
+    long nextWaitlistPosition(String tripScheduleId);
+
+    /**
+     * Reads the schedules of the given trips between two days, both inclusive, with a single
+     * range scan of the trip and date index. The trip of a returned schedule only carries its id,
+     * the DBRef is not resolved.
+     *
+     * @param tripIds
+     * @param fromDay epoch day
+     * @param toDay   epoch day
+     * @return
+     */
+    List<TripSchedule> findByTripIdsAndDateRange(Collection<String> tripIds, int fromDay, int toDay);
+
+    /**
+     * Creates the given schedules with a single unordered bulk write, schedules that already
+     * exist for the same trip and date are left untouched.
+     *
+     * @param tripSchedules schedules whose trip carries at least its id
+     * @return the number of schedules created
+     */
+    int insertMissing(List<TripSchedule> tripSchedules);
+}
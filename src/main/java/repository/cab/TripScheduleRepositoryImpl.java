@@ -0,0 +1,163 @@
+package repository.cab;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import model.cab.Trip;
+import model.cab.TripSchedule;
+import util.SeatBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+
+public class TripScheduleRepositoryImpl implements TripScheduleRepositoryCustom {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Sets the seat bits and decrements availableSeats in a single conditional findAndModify that
+     * only matches while every requested bit is still clear, so concurrent bookings can never
+     * hand out the same seat or oversell the schedule.
+     *
+     * @param tripScheduleId
+     * @param seatNumbers
+     * @return
+     */
+    @Override
+    public TripSchedule claimSeats(String tripScheduleId, int[] seatNumbers) {
+        Criteria criteria = Criteria.where("id").is(tripScheduleId)
+                .and("availableSeats").gte(seatNumbers.length);
+        Update update = new Update().inc("availableSeats", -seatNumbers.length);
+        for (Map.Entry<Integer, List<Integer>> word : bitsByWord(seatNumbers).entrySet()) {
+            String field = "seatMap." + word.getKey();
+            criteria.and(field).bits().allClear(word.getValue());
+            update.bitwise(field).or(mask(word.getValue()));
+        }
+        return mongoTemplate.findAndModify(new Query(criteria), update, FindAndModifyOptions.options().returnNew(true), TripSchedule.class);
+    }
+
+    /**
+     * Clears the seat bits and increments availableSeats in a single conditional findAndModify that
+     * only matches while every given bit is still set, so a seat can never be released twice.
+     *
+     * @param tripScheduleId
+     * @param seatNumbers
+     * @return
+     */
+    @Override
+    public TripSchedule releaseSeats(String tripScheduleId, int[] seatNumbers) {
+        Criteria criteria = Criteria.where("id").is(tripScheduleId);
+        Update update = new Update().inc("availableSeats", seatNumbers.length);
+        for (Map.Entry<Integer, List<Integer>> word : bitsByWord(seatNumbers).entrySet()) {
+            String field = "seatMap." + word.getKey();
+            criteria.and(field).bits().allSet(word.getValue());
+            update.bitwise(field).and(~mask(word.getValue()));
+        }
+        return mongoTemplate.findAndModify(new Query(criteria), update, FindAndModifyOptions.options().returnNew(true), TripSchedule.class);
+    }
+
+    @Override
+    public void initSeatMap(String tripScheduleId, long[] seatMap) {
+        Query query = new Query(Criteria.where("id").is(tripScheduleId)
+                .and("seatMap").exists(false));
+        mongoTemplate.updateFirst(query, Update.update("seatMap", seatMap), TripSchedule.class);
+    }
+
+    @Override
+    public long nextWaitlistPosition(String tripScheduleId) {
+        TripSchedule updated = mongoTemplate.findAndModify(new Query(Criteria.where("id").is(tripScheduleId)),
+                new Update().inc("waitlistSequence", 1), FindAndModifyOptions.options().returnNew(true), TripSchedule.class);
+        return updated != null ? updated.getWaitlistSequence() : -1;
+    }
+
+    @Override
+    public List<TripSchedule> findByTripIdsAndDateRange(Collection<String> tripIds, int fromDay, int toDay) {
+        Query query = new Query(Criteria.where("tripDetail").in(tripIds.stream().map(this::tripRef).collect(Collectors.toList()))
+                .and("tripDate").gte(fromDay).lte(toDay));
+        query.fields().include("tripDetail").include("tripDate").include("availableSeats").include("seatMap");
+        return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(TripSchedule.class))
+                .stream()
+                .map(TripScheduleRepositoryImpl::toTripSchedule)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Upserts keyed on trip and date with $setOnInsert, so concurrent callers and retries never
+     * overwrite the seats of a schedule that is already being booked.
+     *
+     * @param tripSchedules
+     * @return
+     */
+    @Override
+    public int insertMissing(List<TripSchedule> tripSchedules) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TripSchedule.class);
+        for (TripSchedule tripSchedule : tripSchedules) {
+            Update update = new Update().setOnInsert("availableSeats", tripSchedule.getAvailableSeats())
+                    .setOnInsert("seatMap", tripSchedule.getSeatMap());
+            if (tripSchedule.getTripSnapshot() != null) {
+                update.setOnInsert("tripSnapshot", tripSchedule.getTripSnapshot());
+            }
+            bulkOperations.upsert(new Query(Criteria.where("tripDetail").is(tripRef(tripSchedule.getTripDetail().getId()))
+                            .and("tripDate").is(tripSchedule.getTripDay())),
+                    update);
+        }
+        return bulkOperations.execute().getUpserts().size();
+    }
+
+    private DBRef tripRef(String tripId) {
+        return mongoTemplate.getConverter().toDBRef(new Trip().setId(tripId), null);
+    }
+
+    /**
+     * Maps a projected schedule document without resolving its trip
+     *
+     * @param document
+     * @return
+     */
+    private static TripSchedule toTripSchedule(Document document) {
+        DBRef trip = (DBRef) document.get("tripDetail");
+        List<?> words = document.get("seatMap", List.class);
+        long[] seatMap = null;
+        if (words != null) {
+            seatMap = new long[words.size()];
+            for (int word = 0; word < seatMap.length; word++) {
+                seatMap[word] = ((Number) words.get(word)).longValue();
+            }
+        }
+        return new TripSchedule()
+                .setId(document.get("_id").toString())
+                .setTripDetail(new Trip().setId(trip.getId().toString()))
+                .setTripDay(document.getInteger("tripDate", 0))
+                .setAvailableSeats(document.getInteger("availableSeats", 0))
+                .setSeatMap(seatMap);
+    }
+
+    private static Map<Integer, List<Integer>> bitsByWord(int[] seatNumbers) {
+        Map<Integer, List<Integer>> bitsByWord = new TreeMap<>();
+        for (int seatNumber : seatNumbers) {
+            bitsByWord.computeIfAbsent(seatNumber / SeatBitmap.WORD_SIZE, word -> new ArrayList<>())
+                    .add(seatNumber % SeatBitmap.WORD_SIZE);
+        }
+        return bitsByWord;
+    }
+
+    private static long mask(List<Integer> bits) {
+        long mask = 0;
+        for (int bit : bits) {
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,12 @@
+package repository.cab;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import model.cab.WaitlistEntry;
+
+
+public interface WaitlistRepository extends MongoRepository<WaitlistEntry, String>, WaitlistRepositoryCustom {
+    boolean existsByTripScheduleId(String tripScheduleId);
+
+    long countByTripScheduleIdAndPositionLessThan(String tripScheduleId, long position);
+}
@@ -0,0 +1,14 @@
+package repository.cab;
+
+import model.cab.WaitlistEntry;
+
+
+public interface WaitlistRepositoryCustom {
+    /**
+     * Atomically removes the first entry in line of the schedule's waitlist.
+     *
+     * @param tripScheduleId
+     * @return the removed entry, or null if nobody is waiting
+     */
+    WaitlistEntry pollFirst(String tripScheduleId);
+}
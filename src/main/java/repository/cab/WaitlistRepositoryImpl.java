@@ -0,0 +1,29 @@
+package repository.cab;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import model.cab.WaitlistEntry;
+
+
+public class WaitlistRepositoryImpl implements WaitlistRepositoryCustom {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Uses findAndRemove over the (tripScheduleId, position) index, so concurrent promotions of
+     * the same schedule each get a different entry and only touch the head of the line.
+     *
+     * @param tripScheduleId
+     * @return
+     */
+    @Override
+    public WaitlistEntry pollFirst(String tripScheduleId) {
+        Query query = new Query(Criteria.where("tripScheduleId").is(tripScheduleId))
+                .with(Sort.by(Sort.Direction.ASC, "position"));
+        return mongoTemplate.findAndRemove(query, WaitlistEntry.class);
+    }
+}
@@ -4,9 +4,14 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 
 import model.user.User;
 
+import java.util.Collection;
+import java.util.List;
+
 
 public interface UserRepository extends MongoRepository<User, String> {
 
     User findByEmail(String email);
 
+    List<User> findByEmailIn(Collection<String> emails);
+
 }
@@ -1,14 +1,24 @@
 package service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import dto.model.cab.AgencyDto;
+import dto.model.cab.AvailabilityCalendarDto;
 import dto.model.cab.CabDto;
+import dto.model.cab.ItineraryDto;
+import dto.model.cab.SeatHoldDto;
 import dto.model.cab.StopDto;
 import dto.model.cab.TicketDto;
 import dto.model.cab.TripDto;
 import dto.model.cab.TripScheduleDto;
+import dto.model.cab.WaitlistEntryDto;
+import dto.model.user.UserDto;
+import dto.response.CursorPage;
+import service.search.RouteGraph;
+import service.search.SearchSort;
 
 
 public interface CabReservationService {
@@ -18,6 +28,14 @@ public interface CabReservationService {
 
     StopDto getStopByCode(String stopCode);
 
+    List<StopDto> searchStops(String prefix, int limit);
+
+    List<StopDto> findNearestStops(double latitude, double longitude, int limit);
+
+    CursorPage<StopDto> getStops(String cursor, int limit);
+
+    void streamStops(Consumer<StopDto> consumer);
+
     //Agency related methods
     AgencyDto getAgency(UserDto userDto);
 
@@ -32,14 +50,45 @@ public interface CabReservationService {
 
     List<TripDto> getAgencyTrips(String agencyCode);
 
+    CursorPage<TripDto> getAgencyTrips(String agencyCode, String cursor, int limit);
+
+    void streamAgencyTrips(String agencyCode, Consumer<TripDto> consumer);
+
     List<TripDto> getAvailableTripsBetweenStops(String sourceStopCode, String destinationStopCode);
 
+    List<TripDto> getAvailableTripsBetweenStops(String sourceStopCode, String destinationStopCode, SearchSort sort, int limit);
+
+    List<ItineraryDto> getItineraries(String sourceStopCode, String destinationStopCode, int maxLegs, RouteGraph.Criterion criterion);
+
     //Trips Schedule related methods
     List<TripScheduleDto> getAvailableTripSchedules(String sourceStopCode, String destinationStopCode, String tripDate);
 
+    List<TripScheduleDto> getAvailableTripSchedules(String sourceStopCode, String destinationStopCode, String tripDate, SearchSort sort, int limit);
+
+    Map<String, List<TripScheduleDto>> getAvailableTripSchedules(String sourceStopCode, String destinationStopCode, String fromDate, String toDate);
+
+    AvailabilityCalendarDto getAvailabilityCalendar(String sourceStopCode, String destinationStopCode, String fromDate, String toDate);
+
     TripScheduleDto getTripSchedule(TripDto tripDto, String tripDate, boolean createSchedForTrip);
 
     //Ticket related method
     TicketDto bookTicket(TripScheduleDto tripScheduleDto, UserDto passenger);
 
+    TicketDto bookSeat(TripScheduleDto tripScheduleDto, UserDto passenger, int seatNumber);
+
+    TicketDto bookTicket(TripScheduleDto tripScheduleDto, UserDto passenger, Integer seatNumber, String idempotencyKey);
+
+    List<TicketDto> bookTickets(TripScheduleDto tripScheduleDto, UserDto userDto, int seats, List<String> passengerEmails);
+
+    //Seat hold related methods
+    SeatHoldDto holdSeats(TripScheduleDto tripScheduleDto, UserDto userDto, int seats, List<String> passengerEmails);
+
+    List<TicketDto> confirmHold(String holdId, UserDto userDto);
+
+    TicketDto cancelTicket(String ticketId, UserDto userDto);
+
+    WaitlistEntryDto joinWaitlist(TripScheduleDto tripScheduleDto, UserDto userDto);
+
+    void releaseHold(String holdId, UserDto userDto);
+
 }
@@ -1,18 +1,33 @@
 package service;
 
+import org.bson.types.ObjectId;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import dto.mapper.StopMapper;
+import dto.mapper.TicketMapper;
 import dto.mapper.TripMapper;
 import dto.mapper.TripScheduleMapper;
 import dto.model.cab.AgencyDto;
+import dto.model.cab.AvailabilityCalendarDto;
+import dto.model.cab.CabDto;
+import dto.model.cab.ItineraryDto;
+import dto.model.cab.SeatHoldDto;
 import dto.model.cab.StopDto;
 import dto.model.cab.TicketDto;
 import dto.model.cab.TripDto;
 import dto.model.cab.TripScheduleDto;
+import dto.model.cab.WaitlistEntryDto;
 import dto.model.user.UserDto;
+import dto.response.CursorPage;
 import exception.BRSException;
 import exception.EntityType;
 import exception.ExceptionType;
@@ -22,6 +37,8 @@ import model.cab.Stop;
 import model.cab.Ticket;
 import model.cab.Trip;
 import model.cab.TripSchedule;
+import model.cab.TripSnapshot;
+import model.cab.WaitlistEntry;
 import model.user.User;
 import repository.cab.AgencyRepository;
 import repository.cab.CabRepository;
@@ -30,9 +47,33 @@ import repository.cab.TicketRepository;
 import repository.cab.TripRepository;
 import repository.cab.TripScheduleRepository;
 import repository.user.UserRepository;
+import service.hold.SeatHold;
+import service.hold.SeatHoldRegistry;
+import service.idempotency.BookingDeduplicator;
+import service.inventory.SeatInventory;
+import service.inventory.SeatReservation;
+import service.search.RouteGraph;
+import service.search.SearchCache;
+import service.search.SearchSort;
+import service.search.StopGeoIndex;
+import service.search.StopSearchIndex;
+import service.search.TripSearchIndex;
+import service.sequencer.BookingSequencer;
+import service.waitlist.Waitlist;
+import util.DateCodec;
+import util.DateUtils;
+import util.RandomStringUtil;
+import util.SeatBitmap;
+import util.TopK;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static exception.EntityType.*;
 import static exception.ExceptionType.*;
@@ -40,6 +81,12 @@ import static exception.ExceptionType.*;
 
 @Component
 public class CabReservationServiceImpl implements CabReservationService {
+    private static final int MAX_STOP_SUGGESTIONS = 50;
+
+    private static final int MAX_NEAREST_STOPS = 100;
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
     @Autowired
     private AgencyRepository agencyRepository;
 
@@ -64,6 +111,41 @@ public class CabReservationServiceImpl implements CabReservationService {
     @Autowired
     private ModelMapper modelMapper;
 
+    @Autowired
+    private SeatInventory seatInventory;
+
+    @Autowired
+    private SeatHoldRegistry seatHoldRegistry;
+
+    @Autowired
+    private Waitlist waitlist;
+
+    @Autowired
+    private TripSearchIndex tripSearchIndex;
+
+    @Autowired
+    private StopSearchIndex stopSearchIndex;
+
+    @Autowired
+    private StopGeoIndex stopGeoIndex;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    @Autowired
+    private BookingDeduplicator bookingDeduplicator;
+
+    //only present in the sequenced booking mode
+    @Autowired(required = false)
+    private BookingSequencer bookingSequencer;
+
+    @Value("${brs.booking.timeout-ms:5000}")
+    private long bookingTimeoutMillis;
+
+    //memory serves nearest stop lookups from the in-memory k-d tree, mongo from the 2dsphere index
+    @Value("${brs.search.geo-mode:memory}")
+    private String geoMode;
+
     /**
      * Retruns all the available stops in the database.
      *
@@ -73,10 +155,78 @@ public class CabReservationServiceImpl implements CabReservationService {
     public Set<StopDto> getAllStops() {
         return stopRepository.findAll()
                 .stream()
-                .map(stop -> modelMapper.map(stop, StopDto.class))
+                .map(StopMapper::toStopDto)
                 .collect(Collectors.toCollection(TreeSet::new));
     }
 
+    /**
+     * Typeahead search of stops by code, name or detail prefix, served from the in-memory stop index.
+     *
+     * @param prefix
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<StopDto> searchStops(String prefix, int limit) {
+        return stopSearchIndex.search(prefix, Math.min(limit, MAX_STOP_SUGGESTIONS));
+    }
+
+    /**
+     * Returns the stops closest to the given point, closest first. Served from the in-memory
+     * stop k-d tree unless the geo mode is mongo, then by a $near query on the 2dsphere index.
+     *
+     * @param latitude
+     * @param longitude
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<StopDto> findNearestStops(double latitude, double longitude, int limit) {
+        int k = Math.min(limit, MAX_NEAREST_STOPS);
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        if ("mongo".equals(geoMode)) {
+            return stopRepository.findByLocationNear(new GeoJsonPoint(longitude, latitude), PageRequest.of(0, k))
+                    .stream()
+                    .map(StopMapper::toStopDto)
+                    .collect(Collectors.toList());
+        }
+        return stopGeoIndex.nearest(latitude, longitude, k);
+    }
+
+    /**
+     * Returns a page of stops in code order, the page after the given cursor. Pages are
+     * read by keyset on the unique code index, deep pages cost the same as the first one.
+     *
+     * @param cursor the last code of the previous page, or null for the first page
+     * @param limit
+     * @return
+     */
+    @Override
+    public CursorPage<StopDto> getStops(String cursor, int limit) {
+        List<StopDto> stops = stopRepository.findByCodeGreaterThan(cursor != null ? cursor : "",
+                PageRequest.of(0, limit, Sort.by(Sort.Direction.ASC, "code")))
+                .stream()
+                .map(StopMapper::toStopDto)
+                .collect(Collectors.toList());
+        return new CursorPage<StopDto>()
+                .setItems(stops)
+                .setNextCursor(stops.size() == limit ? stops.get(stops.size() - 1).getCode() : null);
+    }
+
+    /**
+     * Hands every stop to the consumer in code order as it is read from a Mongo cursor
+     *
+     * @param consumer
+     */
+    @Override
+    public void streamStops(Consumer<StopDto> consumer) {
+        try (Stream<Stop> stops = stopRepository.streamAllByOrderByCodeAsc()) {
+            stops.map(StopMapper::toStopDto).forEach(consumer);
+        }
+    }
+
     /**
      * Returns the Stop details based on stop code.
      *
@@ -87,7 +237,7 @@ public class CabReservationServiceImpl implements CabReservationService {
     public StopDto getStopByCode(String stopCode) {
         Optional<Stop> stop = Optional.ofNullable(stopRepository.findByCode(stopCode));
         if (stop.isPresent()) {
-            return modelMapper.map(stop.get(), StopDto.class);
+            return StopMapper.toStopDto(stop.get());
         }
         throw exception (STOP, ENTITY_NOT_FOUND, stopCode);
     }
@@ -181,6 +331,10 @@ public class CabReservationServiceImpl implements CabReservationService {
      */
     @Override
     public TripDto getTripById(String tripID) {
+        Optional<TripDto> indexed = Optional.ofNullable(tripSearchIndex.getTrip(tripID));
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
         Optional<Trip> trip = tripRepository.findById(tripID);
         if (trip.isPresent()) {
             return TripMapper.toTripDto(trip.get());
@@ -209,22 +363,28 @@ public class CabReservationServiceImpl implements CabReservationService {
                             //Each new trip creation results in a to and a fro trip
                             List<TripDto> trips = new ArrayList<>(2);
                             Trip toTrip = new Trip()
+                                    .setId(new ObjectId().toString())
                                     .setSourceStop(sourceStop)
                                     .setDestStop(destinationStop)
                                     .setAgency(agency)
                                     .setCab(cab)
                                     .setJourneyTime(tripDto.getJourneyTime())
                                     .setFare(tripDto.getFare());
-                            trips.add(TripMapper.toTripDto(tripRepository.save(toTrip)));
+                            toTrip = tripRepository.save(toTrip.setSnapshot(TripSnapshot.of(toTrip)));
+                            trips.add(TripMapper.toTripDto(toTrip));
 
                             Trip froTrip = new Trip()
+                                    .setId(new ObjectId().toString())
                                     .setSourceStop(destinationStop)
                                     .setDestStop(sourceStop)
                                     .setAgency(agency)
                                     .setCab(cab)
                                     .setJourneyTime(tripDto.getJourneyTime())
                                     .setFare(tripDto.getFare());
-                            trips.add(TripMapper.toTripDto(tripRepository.save(froTrip)));
+                            froTrip = tripRepository.save(froTrip.setSnapshot(TripSnapshot.of(froTrip)));
+                            trips.add(TripMapper.toTripDto(froTrip));
+                            searchCache.evictRoute(sourceStop.getCode(), destinationStop.getCode());
+                            searchCache.evictRoute(destinationStop.getCode(), sourceStop.getCode());
                             return trips;
                         }
                         throw exception(CAB, ENTITY_NOT_FOUND, tripDto.getCabCode());
@@ -246,16 +406,54 @@ public class CabReservationServiceImpl implements CabReservationService {
      */
     @Override
     public List<TripDto> getAgencyTrips(String agencyCode) {
+        List<TripDto> agencyTrips = new ArrayList<>();
+        streamAgencyTrips(agencyCode, agencyTrips::add);
+        return agencyTrips;
+    }
+
+    /**
+     * Returns a page of the trips of an agency, the page after the given cursor. Only trip
+     * ids are read from the database, the trips themselves come from the trip index.
+     *
+     * @param agencyCode
+     * @param cursor     the last trip id of the previous page, or null for the first page
+     * @param limit
+     * @return
+     */
+    @Override
+    public CursorPage<TripDto> getAgencyTrips(String agencyCode, String cursor, int limit) {
         Agency agency = getAgency(agencyCode);
         if (agency != null) {
-            List<Trip> agencyTrips = tripRepository.findByAgency(agency);
-            if (!agencyTrips.isEmpty()) {
-                return agencyTrips
-                        .stream()
-                        .map(trip -> TripMapper.toTripDto(trip))
-                        .collect(Collectors.toList());
+            List<TripDto> trips = toTripDtos(tripRepository.findIdsByAgency(agency.getId(), cursor, limit));
+            return new CursorPage<TripDto>()
+                    .setItems(trips)
+                    .setNextCursor(trips.size() == limit ? trips.get(trips.size() - 1).getId() : null);
+        }
+        throw exception(AGENCY, ENTITY_NOT_FOUND, agencyCode);
+    }
+
+    /**
+     * Hands every trip of an agency to the consumer as its id is read from a Mongo cursor,
+     * trips are mapped a batch at a time so memory use does not grow with the agency
+     *
+     * @param agencyCode
+     * @param consumer
+     */
+    @Override
+    public void streamAgencyTrips(String agencyCode, Consumer<TripDto> consumer) {
+        Agency agency = getAgency(agencyCode);
+        if (agency != null) {
+            try (CloseableIterator<Trip> trips = tripRepository.streamIdsByAgency(agency.getId())) {
+                List<Trip> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+                while (trips.hasNext()) {
+                    batch.add(trips.next());
+                    if (batch.size() == STREAM_BATCH_SIZE || !trips.hasNext()) {
+                        toTripDtos(batch).forEach(consumer);
+                        batch.clear();
+                    }
+                }
             }
-            return Collections.emptyList();
+            return;
         }
         throw exception(AGENCY, ENTITY_NOT_FOUND, agencyCode);
     }
@@ -269,6 +467,10 @@ public class CabReservationServiceImpl implements CabReservationService {
      */
     @Override
     public List<TripDto> getAvailableTripsBetweenStops(String sourceStopCode, String destinationStopCode) {
+        Optional<List<TripDto>> indexed = Optional.ofNullable(tripSearchIndex.findTrips(sourceStopCode, destinationStopCode));
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
         List<Trip> availableTrips = findTripsBetweenStops(sourceStopCode, destinationStopCode);
         if (!availableTrips.isEmpty()) {
             return availableTrips
@@ -279,10 +481,50 @@ public class CabReservationServiceImpl implements CabReservationService {
         return Collections.emptyList();
     }
 
+    /**
+     * Returns the top ranked trips between two stops, selected with a bounded heap
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param sort
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<TripDto> getAvailableTripsBetweenStops(String sourceStopCode, String destinationStopCode, SearchSort sort, int limit) {
+        Comparator<TripDto> comparator = sort.comparator(TripDto::getFare, TripDto::getJourneyTime, tripDto -> 1,
+                tripDto -> Optional.ofNullable(tripSearchIndex.getCapacity(tripDto.getId())).orElse(0));
+        return TopK.select(getAvailableTripsBetweenStops(sourceStopCode, destinationStopCode), comparator, limit);
+    }
+
+    /**
+     * Returns the best itineraries of one up to maxLegs trips between two stops, one per number
+     * of legs, searched on the route graph of the trip index without any database I/O.
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param maxLegs
+     * @param criterion
+     * @return
+     */
+    @Override
+    public List<ItineraryDto> getItineraries(String sourceStopCode, String destinationStopCode, int maxLegs, RouteGraph.Criterion criterion) {
+        return tripSearchIndex.getRouteGraph()
+                .search(sourceStopCode, destinationStopCode, maxLegs, criterion)
+                .stream()
+                .map(legs -> new ItineraryDto()
+                        .setLegs(legs)
+                        .setJourneyTime(legs.stream().mapToInt(TripDto::getJourneyTime).sum())
+                        .setFare(legs.stream().mapToInt(TripDto::getFare).sum()))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Function to locate all the trips between src and dest stops and then
      * filter the results as per the given date based on data present in
-     * trip schedule collection.
+     * trip schedule collection. The schedules of all trips are read with
+     * a single query, see the date range search. Results are cached per
+     * route and day until a booking or new trip changes them.
      *
      * @param sourceStopCode
      * @param destinationStopCode
@@ -291,15 +533,140 @@ public class CabReservationServiceImpl implements CabReservationService {
      */
     @Override
     public List<TripScheduleDto> getAvailableTripSchedules(String sourceStopCode, String destinationStopCode, String tripDate) {
-        List<Trip> availableTrips = findTripsBetweenStops(sourceStopCode, destinationStopCode);
-        if (!availableTrips.isEmpty()) {
-            return availableTrips
-                    .stream()
-                    .map(trip -> getTripSchedule(TripMapper.toTripDto(trip), tripDate, true))
-                    .filter(tripScheduleDto -> tripScheduleDto != null)
-                    .collect(Collectors.toList());
+        return searchCache.get(sourceStopCode, destinationStopCode, tripDate,
+                () -> getAvailableTripSchedules(sourceStopCode, destinationStopCode, tripDate, tripDate)
+                        .getOrDefault(tripDate, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the schedules of all trips between two stops for every day of a date range, grouped
+     * by date and ordered by journey time then fare within a day. The schedules of all matched
+     * trips are read with one query and the trip details come from the trip index, so no trip is
+     * looked up per schedule. Days without a schedule document are returned as virtual schedules
+     * without id and with the full cab capacity, searches never write; the document is only
+     * created by the first booking through getTripSchedule.
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param fromDate
+     * @param toDate
+     * @return
+     */
+    @Override
+    public Map<String, List<TripScheduleDto>> getAvailableTripSchedules(String sourceStopCode, String destinationStopCode, String fromDate, String toDate) {
+        Map<String, TripDto> tripsById = getTripsById(sourceStopCode, destinationStopCode);
+        if (tripsById.isEmpty()) {
+            return Collections.emptyMap();
         }
-        return Collections.emptyList();
+        return groupByDate(findSchedules(tripsById, fromDate, toDate), tripsById);
+    }
+
+    /**
+     * Returns the per day minimum fare and remaining seats between two stops over a date range
+     * as packed arrays. The schedules are read with the same single query as the date range
+     * search and folded straight into the arrays, no schedule dto is created.
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param fromDate
+     * @param toDate
+     * @return
+     */
+    @Override
+    public AvailabilityCalendarDto getAvailabilityCalendar(String sourceStopCode, String destinationStopCode, String fromDate, String toDate) {
+        List<String> dates = DateUtils.datesBetween(fromDate, toDate);
+        int[] minFares = new int[dates.size()];
+        int[] availableSeats = new int[dates.size()];
+        Arrays.fill(minFares, -1);
+        Map<String, TripDto> tripsById = getTripsById(sourceStopCode, destinationStopCode);
+        if (!tripsById.isEmpty()) {
+            Map<String, Integer> days = new HashMap<>();
+            for (int day = 0; day < dates.size(); day++) {
+                days.put(dates.get(day), day);
+            }
+            Set<String> counted = new HashSet<>();
+            for (TripSchedule tripSchedule : findSchedules(tripsById, fromDate, toDate)) {
+                String tripId = tripSchedule.getTripDetail().getId();
+                Integer day = days.get(tripSchedule.getTripDate());
+                if (day == null || !counted.add(tripId.concat(":").concat(tripSchedule.getTripDate()))) {
+                    continue;
+                }
+                int seats = tripSchedule.getId() != null ? seatInventory.availableSeats(tripSchedule) : tripSchedule.getAvailableSeats();
+                if (seats > 0) {
+                    int fare = tripsById.get(tripId).getFare();
+                    availableSeats[day] += seats;
+                    minFares[day] = minFares[day] < 0 ? fare : Math.min(minFares[day], fare);
+                }
+            }
+        }
+        return new AvailabilityCalendarDto()
+                .setSourceStop(sourceStopCode)
+                .setDestinationStop(destinationStopCode)
+                .setFromDate(fromDate)
+                .setDays(dates.size())
+                .setMinFares(minFares)
+                .setAvailableSeats(availableSeats);
+    }
+
+    /**
+     * Returns the top ranked schedules of the trips between two stops on a date. Schedules are
+     * ranked before they are mapped, with a bounded heap, so only the returned ones become dtos.
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param tripDate
+     * @param sort
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<TripScheduleDto> getAvailableTripSchedules(String sourceStopCode, String destinationStopCode, String tripDate, SearchSort sort, int limit) {
+        Map<String, TripDto> tripsById = getTripsById(sourceStopCode, destinationStopCode);
+        if (tripsById.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, TripSchedule> schedulesByTrip = new LinkedHashMap<>();
+        findSchedules(tripsById, tripDate, tripDate)
+                .forEach(tripSchedule -> schedulesByTrip.putIfAbsent(tripSchedule.getTripDetail().getId(), tripSchedule));
+        Comparator<TripSchedule> comparator = sort.comparator(
+                tripSchedule -> tripsById.get(tripSchedule.getTripDetail().getId()).getFare(),
+                tripSchedule -> tripsById.get(tripSchedule.getTripDetail().getId()).getJourneyTime(),
+                tripSchedule -> 1,
+                tripSchedule -> tripSchedule.getId() != null ? seatInventory.availableSeats(tripSchedule) : tripSchedule.getAvailableSeats());
+        return TopK.select(schedulesByTrip.values(), comparator, limit)
+                .stream()
+                .map(tripSchedule -> toTripScheduleDto(tripSchedule, tripsById.get(tripSchedule.getTripDetail().getId())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the schedules of the given trips over a date range with one query and adds a virtual
+     * schedule for every trip and day without a schedule document
+     *
+     * @param tripsById
+     * @param fromDate
+     * @param toDate
+     * @return
+     */
+    private List<TripSchedule> findSchedules(Map<String, TripDto> tripsById, String fromDate, String toDate) {
+        List<TripSchedule> tripSchedules = tripScheduleRepository.findByTripIdsAndDateRange(tripsById.keySet(),
+                DateCodec.parse(fromDate), DateCodec.parse(toDate));
+        Set<String> scheduled = tripSchedules
+                .stream()
+                .map(tripSchedule -> tripSchedule.getTripDetail().getId().concat(":").concat(tripSchedule.getTripDate()))
+                .collect(Collectors.toSet());
+        List<TripSchedule> schedules = new ArrayList<>(tripSchedules);
+        for (String tripDate : DateUtils.datesBetween(fromDate, toDate)) {
+            for (String tripId : tripsById.keySet()) {
+                if (!scheduled.contains(tripId.concat(":").concat(tripDate))) {
+                    schedules.add(new TripSchedule()
+                            .setTripDetail(new Trip().setId(tripId))
+                            .setTripDate(tripDate)
+                            .setAvailableSeats(getCapacity(tripId)));
+                }
+            }
+        }
+        return schedules;
     }
 
     /**
@@ -314,56 +681,333 @@ public class CabReservationServiceImpl implements CabReservationService {
      */
     @Override
     public TripScheduleDto getTripSchedule(TripDto tripDto, String tripDate, boolean createSchedForTrip) {
-        Optional<Trip> trip = tripRepository.findById(tripDto.getId());
-        if (trip.isPresent()) {
-            Optional<TripSchedule> tripSchedule = Optional.ofNullable(tripScheduleRepository.findByTripDetailAndTripDate(trip.get(), tripDate));
-            if (tripSchedule.isPresent()) {
-                return TripScheduleMapper.toTripScheduleDto(tripSchedule.get());
+        //the schedule is read without resolving its trip, the details come from the given trip
+        Optional<TripSchedule> tripSchedule = findTripSchedule(tripDto.getId(), tripDate);
+        if (tripSchedule.isPresent()) {
+            return toTripScheduleDto(tripSchedule.get(), tripDto);
+        } else {
+            if (createSchedForTrip) { //create the schedule
+                int capacity = getCapacity(tripDto.getId());
+                tripScheduleRepository.insertMissing(Collections.singletonList(new TripSchedule()
+                        .setTripDetail(new Trip().setId(tripDto.getId()))
+                        .setTripSnapshot(TripMapper.toTripSnapshot(tripDto, capacity))
+                        .setTripDate(tripDate)
+                        .setAvailableSeats(capacity)
+                        .setSeatMap(SeatBitmap.create(capacity))));
+                //cached searches still show the schedule without its id
+                searchCache.evictSchedule(tripDto.getId(), tripDate);
+                return toTripScheduleDto(findTripSchedule(tripDto.getId(), tripDate)
+                        .orElseThrow(() -> exception(TRIP, ENTITY_NOT_FOUND, tripDto.getId())), tripDto);
             } else {
-                if (createSchedForTrip) { //create the schedule
-                    TripSchedule tripSchedule1 = new TripSchedule()
-                            .setTripDetail(trip.get())
-                            .setTripDate(tripDate)
-                            .setAvailableSeats(trip.get().getCab().getCapacity());
-                    return TripScheduleMapper.toTripScheduleDto(tripScheduleRepository.save(tripSchedule1));
-                } else {
-                    throw exceptionWithId(TRIP, ENTITY_NOT_FOUND, "2", tripDto.getId(), tripDate);
-                }
+                throw exceptionWithId(TRIP, ENTITY_NOT_FOUND, "2", tripDto.getId(), tripDate);
             }
         }
-        throw exception(TRIP, ENTITY_NOT_FOUND, tripDto.getId());
     }
 
     /**
-     * Method to book ticket for a given trip schedule
+     * Method to book ticket for a given trip schedule. The seat is taken from the
+     * configured SeatInventory, without any read or lock up front.
      *
      * @param tripScheduleDto
      * @param userDto
      * @return
      */
     @Override
-    @Transactional
     public TicketDto bookTicket(TripScheduleDto tripScheduleDto, UserDto userDto) {
+        return bookTickets(tripScheduleDto, userDto, 1, Collections.emptyList()).get(0);
+    }
+
+    /**
+     * Method to book a specific seat of a given trip schedule
+     *
+     * @param tripScheduleDto
+     * @param userDto
+     * @param seatNumber
+     * @return
+     */
+    @Override
+    public TicketDto bookSeat(TripScheduleDto tripScheduleDto, UserDto userDto, int seatNumber) {
         User user = getUser(userDto.getEmail());
         if (user != null) {
-            Optional<TripSchedule> tripSchedule = tripScheduleRepository.findById(tripScheduleDto.getId());
-            if (tripSchedule.isPresent()) {
-                Ticket ticket = new Ticket()
-                        .setCancellable(false)
-                        .setJourneyDate(tripSchedule.get().getTripDate())
-                        .setPassenger(user)
-                        .setTripSchedule(tripSchedule.get())
-                        .setSeatNumber(tripSchedule.get().getTripDetail().getCab().getCapacity() - tripSchedule.get().getAvailableSeats());
-                ticketRepository.save(ticket);
-                tripSchedule.get().setAvailableSeats(tripSchedule.get().getAvailableSeats() - 1); //reduce availability by 1
-                tripScheduleRepository.save(tripSchedule.get());//update schedule
-                return TicketMapper.toTicketDto(ticket);
+            Optional<SeatReservation> reservation = Optional.ofNullable(seatInventory.claimSeats(tripScheduleDto.getId(), new int[]{seatNumber}));
+            if (reservation.isPresent()) {
+                return issueTickets(Collections.singletonList(user), reservation.get(), null).get(0);
+            }
+            throw reservationFailure(tripScheduleDto);
+        }
+        throw exception(USER, ENTITY_NOT_FOUND, userDto.getEmail());
+    }
+
+    /**
+     * Books a ticket at most once per idempotency key and user, a retried request gets
+     * the ticket of the original booking back without touching the inventory.
+     *
+     * @param tripScheduleDto
+     * @param userDto
+     * @param seatNumber      the seat to book, or null for the first free one
+     * @param idempotencyKey
+     * @return
+     */
+    @Override
+    public TicketDto bookTicket(TripScheduleDto tripScheduleDto, UserDto userDto, Integer seatNumber, String idempotencyKey) {
+        String key = userDto.getEmail().concat(":").concat(idempotencyKey);
+        return bookingDeduplicator.bookOnce(key, () -> {
+            Optional<Ticket> booked = Optional.ofNullable(seatInventory.findByIdempotencyKey(key));
+            if (booked.isPresent()) {
+                return TicketMapper.toTicketDto(booked.get());
+            }
+            User user = getUser(userDto.getEmail());
+            if (user != null) {
+                Optional<SeatReservation> reservation = Optional.ofNullable(seatNumber != null
+                        ? seatInventory.claimSeats(tripScheduleDto.getId(), new int[]{seatNumber})
+                        : seatInventory.reserveSeats(tripScheduleDto.getId(), 1));
+                if (reservation.isPresent()) {
+                    try {
+                        return issueTickets(Collections.singletonList(user), reservation.get(), key).get(0);
+                    } catch (DuplicateKeyException ex) {
+                        //the same key was booked concurrently on another node, issueTickets released the seat
+                        return TicketMapper.toTicketDto(seatInventory.findByIdempotencyKey(key));
+                    }
+                }
+                throw reservationFailure(tripScheduleDto);
+            }
+            throw exception(USER, ENTITY_NOT_FOUND, userDto.getEmail());
+        });
+    }
+
+    /**
+     * Books several seats on a trip schedule at once, either all of them or none.
+     * One ticket is issued per passenger email, or seats tickets for the booking user
+     * when no passengers are given. Availability moves with a single update and the
+     * tickets are written with one bulk insert. In the sequenced booking mode the
+     * booking is applied by the single writer of the schedule's partition.
+     *
+     * @param tripScheduleDto
+     * @param userDto
+     * @param seats
+     * @param passengerEmails
+     * @return
+     */
+    @Override
+    public List<TicketDto> bookTickets(TripScheduleDto tripScheduleDto, UserDto userDto, int seats, List<String> passengerEmails) {
+        User user = getUser(userDto.getEmail());
+        if (user != null) {
+            List<User> passengers = getPassengers(user, seats, passengerEmails);
+            if (bookingSequencer != null) {
+                List<Ticket> tickets = awaitBooking(bookingSequencer.submit(tripScheduleDto.getId(), passengers));
+                if (!tickets.isEmpty()) {
+                    return toTicketDtos(tickets);
+                }
+                throw reservationFailure(tripScheduleDto);
+            }
+            Optional<SeatReservation> reservation = Optional.ofNullable(seatInventory.reserveSeats(tripScheduleDto.getId(), passengers.size()));
+            if (reservation.isPresent()) {
+                return issueTickets(passengers, reservation.get(), null);
+            }
+            throw reservationFailure(tripScheduleDto);
+        }
+        throw exception(USER, ENTITY_NOT_FOUND, userDto.getEmail());
+    }
+
+    /**
+     * Reserves seats on a trip schedule for a limited time, the hold is either confirmed
+     * into tickets or its seats go back to the inventory when it expires.
+     *
+     * @param tripScheduleDto
+     * @param userDto
+     * @param seats
+     * @param passengerEmails
+     * @return
+     */
+    @Override
+    public SeatHoldDto holdSeats(TripScheduleDto tripScheduleDto, UserDto userDto, int seats, List<String> passengerEmails) {
+        User user = getUser(userDto.getEmail());
+        if (user != null) {
+            List<User> passengers = getPassengers(user, seats, passengerEmails);
+            Optional<SeatReservation> reservation = Optional.ofNullable(seatInventory.reserveSeats(tripScheduleDto.getId(), passengers.size()));
+            if (reservation.isPresent()) {
+                SeatHold seatHold = seatHoldRegistry.hold(reservation.get(), user.getEmail(), passengers);
+                return new SeatHoldDto()
+                        .setId(seatHold.getId())
+                        .setTripScheduleId(reservation.get().getTripSchedule().getId())
+                        .setTripDate(reservation.get().getTripSchedule().getTripDate())
+                        .setSeatNumbers(reservation.get().getSeatNumbers())
+                        .setExpiresAt(seatHold.getExpiresAt());
+            }
+            throw reservationFailure(tripScheduleDto);
+        }
+        throw exception(USER, ENTITY_NOT_FOUND, userDto.getEmail());
+    }
+
+    /**
+     * Turns an open seat hold of the user into tickets
+     *
+     * @param holdId
+     * @param userDto
+     * @return
+     */
+    @Override
+    public List<TicketDto> confirmHold(String holdId, UserDto userDto) {
+        Optional<SeatHold> seatHold = Optional.ofNullable(seatHoldRegistry.take(holdId, userDto.getEmail()));
+        if (seatHold.isPresent()) {
+            return issueTickets(seatHold.get().getPassengers(), seatHold.get().getReservation(), null);
+        }
+        throw exception(HOLD, ENTITY_NOT_FOUND, holdId);
+    }
+
+    /**
+     * Gives the seats of an open hold of the user back before it expires
+     *
+     * @param holdId
+     * @param userDto
+     */
+    @Override
+    public void releaseHold(String holdId, UserDto userDto) {
+        Optional<SeatHold> seatHold = Optional.ofNullable(seatHoldRegistry.take(holdId, userDto.getEmail()));
+        if (seatHold.isPresent()) {
+            SeatReservation reservation = seatHold.get().getReservation();
+            if (seatInventory.releaseSeats(reservation.getTripSchedule().getId(), reservation.getSeatNumbers())) {
+                waitlist.promote(reservation.getTripSchedule().getId(), reservation.getSeatNumbers().length);
+            }
+            return;
+        }
+        throw exception(HOLD, ENTITY_NOT_FOUND, holdId);
+    }
+
+    /**
+     * Cancels an upcoming ticket of the user. The ticket is marked cancelled first, which only
+     * one caller can win, then its seat goes back to the schedule with a conditional update,
+     * so concurrent bookings either see the seat taken or claim it once it is free.
+     *
+     * @param ticketId
+     * @param userDto
+     * @return
+     */
+    @Override
+    public TicketDto cancelTicket(String ticketId, UserDto userDto) {
+        Optional<Ticket> ticket = ticketRepository.findById(ticketId)
+                .filter(booked -> passengerEmail(booked).equals(userDto.getEmail()));
+        if (ticket.isPresent()) {
+            Optional<Ticket> cancelled = Optional.ofNullable(ticketRepository.markCancelled(ticketId, DateCodec.today()));
+            if (cancelled.isPresent()) {
+                String tripScheduleId = cancelled.get().getTripSchedule().getId();
+                if (seatInventory.releaseSeats(tripScheduleId, new int[]{cancelled.get().getSeatNumber()})) {
+                    waitlist.promote(tripScheduleId, 1);
+                }
+                return TicketMapper.toTicketDto(cancelled.get());
+            }
+            throw exception(TICKET, ENTITY_EXCEPTION, ticketId);
+        }
+        throw exception(TICKET, ENTITY_NOT_FOUND, ticketId);
+    }
+
+    /**
+     * Puts the user on the waitlist of a sold out trip schedule, the user gets a ticket as soon
+     * as a seat is released and everybody in front has been served
+     *
+     * @param tripScheduleDto
+     * @param userDto
+     * @return
+     */
+    @Override
+    public WaitlistEntryDto joinWaitlist(TripScheduleDto tripScheduleDto, UserDto userDto) {
+        User user = getUser(userDto.getEmail());
+        if (user != null) {
+            if (tripScheduleDto.getAvailableSeats() > 0) {
+                throw exception(TRIPSCHEDULE, ENTITY_EXCEPTION, tripScheduleDto.getTripId(), tripScheduleDto.getTripDate());
+            }
+            try {
+                Optional<WaitlistEntry> entry = Optional.ofNullable(waitlist.join(tripScheduleDto.getId(), user));
+                if (entry.isPresent()) {
+                    //a seat released since the availability check would otherwise wait for the next release
+                    waitlist.promote(tripScheduleDto.getId(), 1);
+                    return new WaitlistEntryDto()
+                            .setId(entry.get().getId())
+                            .setTripScheduleId(tripScheduleDto.getId())
+                            .setTripDate(tripScheduleDto.getTripDate())
+                            .setAhead(waitlist.ahead(entry.get()));
+                }
+            } catch (DuplicateKeyException ex) {
+                throw exception(TRIPSCHEDULE, DUPLICATE_ENTITY, tripScheduleDto.getTripId(), tripScheduleDto.getTripDate());
             }
             throw exceptionWithId(TRIP, ENTITY_NOT_FOUND, "2", tripScheduleDto.getTripId(), tripScheduleDto.getTripDate());
         }
         throw exception(USER, ENTITY_NOT_FOUND, userDto.getEmail());
     }
 
+    /**
+     * Issues one ticket per passenger on the seats of the reservation and saves them in one bulk write,
+     * the seats go back to the inventory when the tickets cannot be saved
+     *
+     * @param passengers
+     * @param reservation
+     * @param idempotencyKey only set for single ticket bookings
+     * @return
+     */
+    private List<TicketDto> issueTickets(List<User> passengers, SeatReservation reservation, String idempotencyKey) {
+        List<Ticket> tickets = reservation.toTickets(passengers, idempotencyKey);
+        try {
+            seatInventory.saveTickets(tickets);
+        } catch (RuntimeException ex) {
+            seatInventory.releaseSeats(reservation.getTripSchedule().getId(), reservation.getSeatNumbers());
+            throw ex;
+        }
+        return toTicketDtos(tickets);
+    }
+
+    /**
+     * Waits for a booking queued on the sequencer. A booking still queued after the timeout is
+     * withdrawn, one its writer already started is waited for, so no booking outlives its request.
+     *
+     * @param booking
+     * @return
+     */
+    private List<Ticket> awaitBooking(CompletableFuture<List<Ticket>> booking) {
+        try {
+            try {
+                return booking.get(bookingTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                if (booking.cancel(false)) {
+                    throw new RuntimeException(ex);
+                }
+                return booking.get();
+            }
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            booking.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Maps tickets to their dtos
+     *
+     * @param tickets
+     * @return
+     */
+    private List<TicketDto> toTicketDtos(List<Ticket> tickets) {
+        return tickets
+                .stream()
+                .map(ticket -> TicketMapper.toTicketDto(ticket))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the exception for a reservation the inventory turned down, the schedule
+     * is only looked up on this failure path
+     *
+     * @param tripScheduleDto
+     * @return
+     */
+    private RuntimeException reservationFailure(TripScheduleDto tripScheduleDto) {
+        if (tripScheduleRepository.existsById(tripScheduleDto.getId())) {
+            return exception(TRIPSCHEDULE, ENTITY_EXCEPTION, tripScheduleDto.getTripId(), tripScheduleDto.getTripDate());
+        }
+        return exceptionWithId(TRIP, ENTITY_NOT_FOUND, "2", tripScheduleDto.getTripId(), tripScheduleDto.getTripDate());
+    }
+
     /**
      * Search for all Trips between src and dest stops
      *
@@ -389,6 +1033,116 @@ public class CabReservationServiceImpl implements CabReservationService {
         throw exception(STOP, ENTITY_NOT_FOUND, sourceStopCode);
     }
 
+    /**
+     * Returns the trips between two stops by id
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @return
+     */
+    private Map<String, TripDto> getTripsById(String sourceStopCode, String destinationStopCode) {
+        return getAvailableTripsBetweenStops(sourceStopCode, destinationStopCode)
+                .stream()
+                .collect(Collectors.toMap(TripDto::getId, tripDto -> tripDto, (first, second) -> first, LinkedHashMap::new));
+    }
+
+    /**
+     * Groups schedules with unresolved trips by date, ordered by journey time then fare,
+     * keeping one schedule per trip and date
+     *
+     * @param tripSchedules
+     * @param tripsById
+     * @return
+     */
+    private Map<String, List<TripScheduleDto>> groupByDate(List<TripSchedule> tripSchedules, Map<String, TripDto> tripsById) {
+        Map<String, Map<String, TripScheduleDto>> byDate = new TreeMap<>();
+        for (TripSchedule tripSchedule : tripSchedules) {
+            TripDto tripDto = tripsById.get(tripSchedule.getTripDetail().getId());
+            byDate.computeIfAbsent(tripSchedule.getTripDate(), tripDate -> new HashMap<>())
+                    .putIfAbsent(tripDto.getId(), toTripScheduleDto(tripSchedule, tripDto));
+        }
+        Map<String, List<TripScheduleDto>> grouped = new LinkedHashMap<>();
+        byDate.forEach((tripDate, schedules) -> grouped.put(tripDate, schedules.values()
+                .stream()
+                .sorted(Comparator.comparingInt(TripScheduleDto::getJourneyTime).thenComparingInt(TripScheduleDto::getFare))
+                .collect(Collectors.toList())));
+        return grouped;
+    }
+
+    /**
+     * Maps trips that only carry their id, from the trip index where possible and with one
+     * query for the trips it does not know, keeping the given order
+     *
+     * @param trips
+     * @return
+     */
+    private List<TripDto> toTripDtos(List<Trip> trips) {
+        Map<String, TripDto> tripDtos = new HashMap<>();
+        List<String> unindexed = new ArrayList<>();
+        for (Trip trip : trips) {
+            Optional<TripDto> tripDto = Optional.ofNullable(tripSearchIndex.getTrip(trip.getId()));
+            if (tripDto.isPresent()) {
+                tripDtos.put(trip.getId(), tripDto.get());
+            } else {
+                unindexed.add(trip.getId());
+            }
+        }
+        if (!unindexed.isEmpty()) {
+            tripRepository.findAllById(unindexed).forEach(trip -> tripDtos.put(trip.getId(), TripMapper.toTripDto(trip)));
+        }
+        return trips.stream()
+                .map(trip -> tripDtos.get(trip.getId()))
+                .filter(tripDto -> tripDto != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the schedule of a trip on a date without resolving its trip
+     *
+     * @param tripId
+     * @param tripDate
+     * @return
+     */
+    private Optional<TripSchedule> findTripSchedule(String tripId, String tripDate) {
+        return tripScheduleRepository.findByTripIdsAndDateRange(Collections.singleton(tripId), DateCodec.parse(tripDate), DateCodec.parse(tripDate))
+                .stream()
+                .findFirst();
+    }
+
+    private static String passengerEmail(Ticket ticket) {
+        return ticket.getPassengerSnapshot() != null ? ticket.getPassengerSnapshot().getEmail() : ticket.getPassenger().getEmail();
+    }
+
+    /**
+     * Returns the cab capacity of a trip, from the trip index when it knows the trip
+     *
+     * @param tripId
+     * @return
+     */
+    private int getCapacity(String tripId) {
+        Optional<Integer> capacity = Optional.ofNullable(tripSearchIndex.getCapacity(tripId));
+        if (capacity.isPresent()) {
+            return capacity.get();
+        }
+        return tripRepository.findById(tripId)
+                .map(Trip::getCabCapacity)
+                .orElseThrow(() -> exception(TRIP, ENTITY_NOT_FOUND, tripId));
+    }
+
+    /**
+     * Maps a schedule whose trip was not resolved to its dto with the live seat count of the inventory
+     *
+     * @param tripSchedule
+     * @param tripDto
+     * @return
+     */
+    private TripScheduleDto toTripScheduleDto(TripSchedule tripSchedule, TripDto tripDto) {
+        TripScheduleDto tripScheduleDto = TripScheduleMapper.toTripScheduleDto(tripSchedule, tripDto);
+        return tripSchedule.getId() != null
+                ? tripScheduleDto.setAvailableSeats(seatInventory.availableSeats(tripSchedule))
+                : tripScheduleDto;
+    }
+
     /**
      * Fetch user from UserDto
      *
@@ -399,6 +1153,33 @@ public class CabReservationServiceImpl implements CabReservationService {
         return userRepository.findByEmail(email);
     }
 
+    /**
+     * Resolves the passengers of a booking with a single query, defaults to the
+     * booking user for every seat when no passenger emails are given
+     *
+     * @param user
+     * @param seats
+     * @param passengerEmails
+     * @return
+     */
+    private List<User> getPassengers(User user, int seats, List<String> passengerEmails) {
+        if (passengerEmails == null || passengerEmails.isEmpty()) {
+            return Collections.nCopies(seats, user);
+        }
+        Map<String, User> usersByEmail = userRepository.findByEmailIn(new HashSet<>(passengerEmails))
+                .stream()
+                .collect(Collectors.toMap(User::getEmail, passenger -> passenger));
+        List<User> passengers = new ArrayList<>(passengerEmails.size());
+        for (String email : passengerEmails) {
+            User passenger = usersByEmail.get(email);
+            if (passenger == null) {
+                throw exception(USER, ENTITY_NOT_FOUND, email);
+            }
+            passengers.add(passenger);
+        }
+        return passengers;
+    }
+
     /**
      * Fetch Stop from stopCode
      *
@@ -0,0 +1,32 @@
+package service.hold;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import model.user.User;
+import service.inventory.SeatReservation;
+import util.TimingWheel;
+
+import java.util.Date;
+import java.util.List;
+
+
+/**
+ * Seats reserved for a passenger while the booking is being paid for
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class SeatHold {
+    private String id;
+
+    private String ownerEmail;
+
+    private SeatReservation reservation;
+
+    private List<User> passengers;
+
+    private Date expiresAt;
+
+    private TimingWheel.Timeout<SeatHold> timeout;
+}
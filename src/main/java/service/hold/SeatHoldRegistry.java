@@ -0,0 +1,237 @@
+package service.hold;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import model.cab.SeatHoldEntry;
+import model.cab.TripSchedule;
+import model.user.User;
+import repository.cab.SeatHoldRepository;
+import repository.cab.TripScheduleRepository;
+import repository.user.UserRepository;
+import service.inventory.SeatInventory;
+import service.inventory.SeatReservation;
+import service.waitlist.Waitlist;
+import util.TimingWheel;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+
+/**
+ * Keeps the open seat holds in memory and releases their seats back to the inventory once the
+ * hold TTL elapses. Expiry runs on a hashed timing wheel, a hold costs one map entry and one
+ * wheel entry, and no per-hold scheduled task is involved. The wheel only hands expired holds to
+ * a small executor, releasing seats and promoting the waitlist never runs on the wheel thread.
+ * <p>
+ * Every hold is also stored with its expiry. Removing that document decides who owns the seats,
+ * so holds survive on another node or across a restart, and holds that lapsed while no process
+ * was watching them are released by a sweep on startup and at a fixed interval.
+ */
+@Slf4j
+@Component
+public class SeatHoldRegistry {
+    @Autowired
+    private SeatInventory seatInventory;
+
+    @Autowired
+    private Waitlist waitlist;
+
+    @Autowired
+    private SeatHoldRepository seatHoldRepository;
+
+    @Autowired
+    private TripScheduleRepository tripScheduleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${brs.hold.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${brs.hold.tick-ms:100}")
+    private long tickMillis;
+
+    @Value("${brs.hold.ticks-per-wheel:512}")
+    private int ticksPerWheel;
+
+    @Value("${brs.hold.expiry-threads:2}")
+    private int expiryThreads;
+
+    private final ConcurrentMap<String, SeatHold> holds = new ConcurrentHashMap<>();
+
+    private TimingWheel<SeatHold> timingWheel;
+
+    private ExecutorService expiryExecutor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threads = new AtomicInteger();
+        expiryExecutor = Executors.newFixedThreadPool(expiryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "seat-hold-release-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timingWheel = new TimingWheel<>("seat-hold-expiry", tickMillis, ticksPerWheel,
+                seatHold -> expiryExecutor.execute(() -> expire(seatHold)));
+        timingWheel.start();
+        //holds of a previous process that lapsed while it was down
+        releaseLapsed();
+    }
+
+    /**
+     * Stops the wheel and waits for the expiries already handed off. Open holds stay stored, they
+     * are taken on another node or after the restart, or released by the sweep once they lapse.
+     *
+     * @throws InterruptedException
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        timingWheel.stop();
+        expiryExecutor.shutdown();
+        expiryExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers a hold on the reserved seats, they are released if the hold is not taken before the TTL
+     *
+     * @param reservation
+     * @param ownerEmail
+     * @param passengers
+     * @return
+     */
+    public SeatHold hold(SeatReservation reservation, String ownerEmail, List<User> passengers) {
+        long ttlMillis = ttlSeconds * 1000;
+        SeatHold seatHold = new SeatHold()
+                .setId(UUID.randomUUID().toString())
+                .setOwnerEmail(ownerEmail)
+                .setReservation(reservation)
+                .setPassengers(passengers)
+                .setExpiresAt(new Date(System.currentTimeMillis() + ttlMillis));
+        try {
+            seatHoldRepository.insert(new SeatHoldEntry()
+                    .setId(seatHold.getId())
+                    .setOwnerEmail(ownerEmail)
+                    .setTripScheduleId(reservation.getTripSchedule().getId())
+                    .setSeatNumbers(reservation.getSeatNumbers())
+                    .setPassengerIds(passengers.stream().map(User::getId).collect(Collectors.toList()))
+                    .setExpiresAt(seatHold.getExpiresAt()));
+        } catch (RuntimeException ex) {
+            seatInventory.releaseSeats(reservation.getTripSchedule().getId(), reservation.getSeatNumbers());
+            throw ex;
+        }
+        seatHold.setTimeout(timingWheel.schedule(seatHold, ttlMillis));
+        holds.put(seatHold.getId(), seatHold);
+        return seatHold;
+    }
+
+    /**
+     * Removes an open hold of the given owner, after which its seats are no longer released on expiry.
+     * A hold made by another node or before a restart is taken from its stored copy.
+     *
+     * @param holdId
+     * @param ownerEmail
+     * @return the hold, or null if it does not exist, belongs to someone else or already expired
+     */
+    public SeatHold take(String holdId, String ownerEmail) {
+        SeatHold seatHold = holds.get(holdId);
+        if (seatHold != null) {
+            //whoever flips the timeout state first, this call or the expiry, owns the seats
+            if (seatHold.getOwnerEmail().equals(ownerEmail) && holds.remove(holdId, seatHold)
+                    && seatHold.getTimeout().cancel()) {
+                //the sweep of another node may have released it since it lapsed
+                return seatHoldRepository.take(holdId) != null ? seatHold : null;
+            }
+            return null;
+        }
+        SeatHoldEntry entry = seatHoldRepository.takeOpen(holdId, ownerEmail, new Date());
+        return entry != null ? toSeatHold(entry) : null;
+    }
+
+    /**
+     * Releases the seats of stored holds whose TTL elapsed, one hold at a time
+     */
+    @Scheduled(initialDelayString = "${brs.hold.sweep-interval-ms:60000}", fixedDelayString = "${brs.hold.sweep-interval-ms:60000}")
+    public void releaseLapsed() {
+        Date now = new Date();
+        int released = 0;
+        SeatHoldEntry entry;
+        while ((entry = seatHoldRepository.pollLapsed(now)) != null) {
+            SeatHold seatHold = holds.remove(entry.getId());
+            if (seatHold != null) {
+                seatHold.getTimeout().cancel();
+            }
+            releaseSeats(entry.getTripScheduleId(), entry.getSeatNumbers());
+            released++;
+        }
+        if (released > 0) {
+            log.info("Released the seats of {} lapsed holds", released);
+        }
+    }
+
+    private void expire(SeatHold seatHold) {
+        holds.remove(seatHold.getId(), seatHold);
+        try {
+            release(seatHold);
+        } catch (RuntimeException ex) {
+            //the stored hold is left for the sweep
+            log.warn("Seat hold {} could not be released", seatHold.getId(), ex);
+        }
+    }
+
+    private void release(SeatHold seatHold) {
+        if (seatHoldRepository.take(seatHold.getId()) != null) {
+            releaseSeats(seatHold.getReservation().getTripSchedule().getId(), seatHold.getReservation().getSeatNumbers());
+        }
+    }
+
+    private void releaseSeats(String tripScheduleId, int[] seatNumbers) {
+        if (seatInventory.releaseSeats(tripScheduleId, seatNumbers)) {
+            waitlist.promote(tripScheduleId, seatNumbers.length);
+        }
+    }
+
+    /**
+     * Rebuilds a hold taken from its stored copy, the seats are released if a passenger is gone
+     *
+     * @param entry
+     * @return the hold, or null if it can no longer be confirmed
+     */
+    private SeatHold toSeatHold(SeatHoldEntry entry) {
+        Optional<TripSchedule> tripSchedule = tripScheduleRepository.findById(entry.getTripScheduleId());
+        Map<String, User> usersById = userRepository.findAllById(entry.getPassengerIds())
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<User> passengers = entry.getPassengerIds()
+                .stream()
+                .map(usersById::get)
+                .filter(passenger -> passenger != null)
+                .collect(Collectors.toList());
+        if (!tripSchedule.isPresent() || passengers.size() != entry.getSeatNumbers().length) {
+            releaseSeats(entry.getTripScheduleId(), entry.getSeatNumbers());
+            return null;
+        }
+        return new SeatHold()
+                .setId(entry.getId())
+                .setOwnerEmail(entry.getOwnerEmail())
+                .setReservation(new SeatReservation(tripSchedule.get(), entry.getSeatNumbers()))
+                .setPassengers(passengers)
+                .setExpiresAt(entry.getExpiresAt());
+    }
+}
@@ -0,0 +1,88 @@
+package service.idempotency;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import dto.model.cab.TicketDto;
+import util.TimingWheel;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+
+/**
+ * Bounded, expiring memory of bookings made with an idempotency key. A retry with a known key
+ * gets the outcome of the original booking, a retry arriving while the original is still in
+ * flight waits for it. Keys older than the TTL, or not kept because the store was full, fall
+ * back to the unique idempotencyKey index of the ticket collection.
+ */
+@Component
+public class BookingDeduplicator {
+    @Value("${brs.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${brs.idempotency.max-entries:100000}")
+    private int maxEntries;
+
+    private final ConcurrentMap<String, CompletableFuture<TicketDto>> bookings = new ConcurrentHashMap<>();
+
+    private TimingWheel<String> timingWheel;
+
+    @PostConstruct
+    public void start() {
+        timingWheel = new TimingWheel<>("idempotency-expiry", 1000, 3600, bookings::remove);
+        timingWheel.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        timingWheel.stop();
+    }
+
+    /**
+     * Runs the booking once per key, concurrent and later calls with the same key get its outcome
+     *
+     * @param key
+     * @param booking
+     * @return
+     */
+    public TicketDto bookOnce(String key, Supplier<TicketDto> booking) {
+        if (bookings.size() >= maxEntries) {
+            return booking.get();
+        }
+        CompletableFuture<TicketDto> outcome = new CompletableFuture<>();
+        CompletableFuture<TicketDto> existing = bookings.putIfAbsent(key, outcome);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+            }
+        }
+        try {
+            TicketDto ticketDto = booking.get();
+            outcome.complete(ticketDto);
+            timingWheel.schedule(key, ttlSeconds * 1000);
+            return ticketDto;
+        } catch (RuntimeException ex) {
+            //a failed booking is not remembered, the client may retry it
+            bookings.remove(key, outcome);
+            outcome.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Drops the remembered outcome of a key, the next call runs the booking again
+     *
+     * @param key
+     */
+    public void forget(String key) {
+        bookings.remove(key);
+    }
+}
@@ -0,0 +1,159 @@
+package service.inventory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+import repository.cab.TicketRepository;
+import repository.cab.TripScheduleRepository;
+import service.search.SearchCache;
+import util.SeatBitmap;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Default inventory, every reservation is a conditional atomic update of the seat bitmap
+ * on the tripschedule document.
+ * <p>
+ * Free seats are picked from the schedule state returned by the previous reservation on this
+ * node, so the steady state needs no read before the update. When another booking took one of
+ * the picked seats in the meantime the update does not match, the state is re-read and the
+ * reservation retried for as long as the schedule still has enough seats. A failed update means
+ * another booking succeeded, so the retries end at the latest once the schedule is full.
+ */
+@Component
+@ConditionalOnProperty(name = "brs.inventory.mode", havingValue = "mongo", matchIfMissing = true)
+public class MongoSeatInventory implements SeatInventory {
+    private static final int MAX_KNOWN_SCHEDULES = 10_000;
+
+    @Autowired
+    private TripScheduleRepository tripScheduleRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    private final ConcurrentMap<String, TripSchedule> knownSchedules = new ConcurrentHashMap<>();
+
+    @Override
+    public SeatReservation reserveSeats(String tripScheduleId, int seats) {
+        TripSchedule tripSchedule = knownSchedules.get(tripScheduleId);
+        boolean fresh = false;
+        while (true) {
+            if (tripSchedule == null) {
+                tripSchedule = load(tripScheduleId);
+                fresh = true;
+                if (tripSchedule == null || tripSchedule.getAvailableSeats() < seats) {
+                    return null;
+                }
+            }
+            int[] seatNumbers = SeatBitmap.findFree(tripSchedule.getSeatMap(), capacity(tripSchedule), seats);
+            if (seatNumbers == null) {
+                if (fresh) {
+                    return null;
+                }
+                //seats may have been released since, decide on the current state
+                tripSchedule = null;
+                continue;
+            }
+            SeatReservation reservation = claim(tripScheduleId, seatNumbers);
+            if (reservation != null) {
+                return reservation;
+            }
+            tripSchedule = null;
+        }
+    }
+
+    @Override
+    public SeatReservation claimSeats(String tripScheduleId, int[] seatNumbers) {
+        Optional<TripSchedule> tripSchedule = Optional.ofNullable(knownSchedules.get(tripScheduleId));
+        if (!tripSchedule.isPresent()) {
+            tripSchedule = Optional.ofNullable(load(tripScheduleId));
+        }
+        if (tripSchedule.isPresent()) {
+            int capacity = capacity(tripSchedule.get());
+            for (int seatNumber : seatNumbers) {
+                if (seatNumber < 0 || seatNumber >= capacity) {
+                    return null;
+                }
+            }
+            return claim(tripScheduleId, seatNumbers);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean releaseSeats(String tripScheduleId, int[] seatNumbers) {
+        TripSchedule updated = tripScheduleRepository.releaseSeats(tripScheduleId, seatNumbers);
+        if (updated != null) {
+            remember(updated);
+            changed(updated);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int availableSeats(TripSchedule tripSchedule) {
+        return tripSchedule.getAvailableSeats();
+    }
+
+    @Override
+    public Ticket findByIdempotencyKey(String idempotencyKey) {
+        return ticketRepository.findByIdempotencyKey(idempotencyKey);
+    }
+
+    @Override
+    public void saveTickets(List<Ticket> tickets) {
+        ticketRepository.saveAll(tickets);
+    }
+
+    private SeatReservation claim(String tripScheduleId, int[] seatNumbers) {
+        TripSchedule updated = tripScheduleRepository.claimSeats(tripScheduleId, seatNumbers);
+        if (updated != null) {
+            remember(updated);
+            changed(updated);
+            return new SeatReservation(updated, seatNumbers);
+        }
+        knownSchedules.remove(tripScheduleId);
+        return null;
+    }
+
+    private TripSchedule load(String tripScheduleId) {
+        Optional<TripSchedule> tripSchedule = tripScheduleRepository.findById(tripScheduleId);
+        if (!tripSchedule.isPresent()) {
+            return null;
+        }
+        if (tripSchedule.get().getSeatMap() == null) {
+            int capacity = capacity(tripSchedule.get());
+            tripScheduleRepository.initSeatMap(tripScheduleId,
+                    SeatBitmap.firstTaken(capacity, capacity - tripSchedule.get().getAvailableSeats()));
+            tripSchedule = tripScheduleRepository.findById(tripScheduleId);
+        }
+        tripSchedule.ifPresent(this::remember);
+        return tripSchedule.orElse(null);
+    }
+
+    private void remember(TripSchedule tripSchedule) {
+        if (knownSchedules.size() >= MAX_KNOWN_SCHEDULES) {
+            knownSchedules.clear();
+        }
+        knownSchedules.put(tripSchedule.getId(), tripSchedule);
+    }
+
+    private void changed(TripSchedule tripSchedule) {
+        searchCache.evictSchedule(tripSchedule.getTripId(), tripSchedule.getTripDate());
+    }
+
+    private static int capacity(TripSchedule tripSchedule) {
+        return tripSchedule.getCabCapacity();
+    }
+}
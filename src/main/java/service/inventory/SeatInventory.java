@@ -0,0 +1,67 @@
+package service.inventory;
+
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+
+import java.util.List;
+
+
+/**
+ * Source of truth for live seat availability of trip schedules.
+ * The implementation in use is picked with the brs.inventory.mode property.
+ */
+public interface SeatInventory {
+
+    /**
+     * Atomically reserves the given number of seats on a schedule, either all of them or none.
+     * The lowest free seat numbers are allocated.
+     *
+     * @param tripScheduleId
+     * @param seats
+     * @return the reservation, or null if too few seats are left or the schedule does not exist
+     */
+    SeatReservation reserveSeats(String tripScheduleId, int seats);
+
+    /**
+     * Atomically reserves the given seat numbers on a schedule, either all of them or none.
+     *
+     * @param tripScheduleId
+     * @param seatNumbers
+     * @return the reservation, or null if a seat is taken or invalid, or the schedule does not exist
+     */
+    SeatReservation claimSeats(String tripScheduleId, int[] seatNumbers);
+
+    /**
+     * Atomically gives the given seats of a schedule back to the inventory.
+     *
+     * @param tripScheduleId
+     * @param seatNumbers
+     * @return false if a seat was not taken or the schedule does not exist, a seat released
+     * twice concurrently is given back only once
+     */
+    boolean releaseSeats(String tripScheduleId, int[] seatNumbers);
+
+    /**
+     * Returns the ticket booked with the given idempotency key, including tickets not written yet.
+     *
+     * @param idempotencyKey
+     * @return the ticket, or null if the key was not booked
+     */
+    Ticket findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Returns the live number of available seats for the given schedule.
+     *
+     * @param tripSchedule
+     * @return
+     */
+    int availableSeats(TripSchedule tripSchedule);
+
+    /**
+     * Persists the tickets issued against a reservation in one bulk write.
+     *
+     * @param tickets
+     * @throws org.springframework.dao.DuplicateKeyException if an idempotency key of the tickets was already booked
+     */
+    void saveTickets(List<Ticket> tickets);
+}
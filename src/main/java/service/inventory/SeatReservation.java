@@ -0,0 +1,62 @@
+package service.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import model.cab.PassengerSnapshot;
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+import model.cab.TripSnapshot;
+import model.user.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Outcome of a successful seat reservation: the schedule the seats were taken from and the seat numbers.
+ */
+@Getter
+@AllArgsConstructor
+public class SeatReservation {
+    private final TripSchedule tripSchedule;
+
+    private final int[] seatNumbers;
+
+    /**
+     * Returns the reservation of a slice of these seats
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public SeatReservation slice(int from, int to) {
+        return new SeatReservation(tripSchedule, Arrays.copyOfRange(seatNumbers, from, to));
+    }
+
+    /**
+     * Issues one unsaved ticket per passenger on the reserved seats, in order
+     *
+     * @param passengers
+     * @param idempotencyKey
+     * @return
+     */
+    public List<Ticket> toTickets(List<User> passengers, String idempotencyKey) {
+        List<Ticket> tickets = new ArrayList<>(passengers.size());
+        TripSnapshot tripSnapshot = tripSchedule.getTripSnapshot() != null
+                ? tripSchedule.getTripSnapshot()
+                : TripSnapshot.of(tripSchedule.getTripDetail());
+        for (int i = 0; i < passengers.size(); i++) {
+            tickets.add(new Ticket()
+                    .setCancellable(true)
+                    .setJourneyDate(tripSchedule.getTripDate())
+                    .setPassenger(passengers.get(i))
+                    .setTripSchedule(tripSchedule)
+                    .setTripSnapshot(tripSnapshot)
+                    .setPassengerSnapshot(PassengerSnapshot.of(passengers.get(i)))
+                    .setSeatNumber(seatNumbers[i])
+                    .setIdempotencyKey(idempotencyKey));
+        }
+        return tickets;
+    }
+}
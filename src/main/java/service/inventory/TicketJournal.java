@@ -0,0 +1,144 @@
+package service.inventory;
+
+import org.bson.RawBsonDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Append-only local log of the tickets the write-behind inventory acknowledged but did not write
+ * to Mongo yet. Tickets are appended as BSON documents to numbered segment files and forced to
+ * disk before the booking is acknowledged.
+ * <p>
+ * A flush first rolls over to a new segment, once everything queued before the roll is in Mongo
+ * the segments before it are deleted. On startup the segments left behind are replayed, a record
+ * torn by a crash was never forced, so it was never acknowledged and is skipped.
+ */
+class TicketJournal implements Closeable {
+    private static final String PREFIX = "tickets-";
+
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+
+    private long segment;
+
+    private FileChannel channel;
+
+    TicketJournal(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segment = segments().stream().mapToLong(TicketJournal::segmentNumber).max().orElse(0) + 1;
+        this.channel = open(segment);
+    }
+
+    /**
+     * Appends the documents to the current segment and forces them to disk
+     *
+     * @param documents
+     * @throws IOException
+     */
+    synchronized void append(List<RawBsonDocument> documents) throws IOException {
+        for (RawBsonDocument document : documents) {
+            ByteBuffer buffer = document.getByteBuffer().asNIO();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Closes the current segment and continues in a new one
+     *
+     * @return the number of the new segment, every segment before it is closed
+     * @throws IOException
+     */
+    synchronized long roll() throws IOException {
+        channel.close();
+        channel = open(++segment);
+        return segment;
+    }
+
+    /**
+     * Deletes the closed segments numbered below the given one
+     *
+     * @param segment
+     * @throws IOException
+     */
+    void deleteBefore(long segment) throws IOException {
+        for (Path path : segments()) {
+            if (segmentNumber(path) < segment) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Reads the records of every segment before the current one, in the order they were written
+     *
+     * @return
+     * @throws IOException
+     */
+    List<RawBsonDocument> readClosed() throws IOException {
+        long current;
+        synchronized (this) {
+            current = segment;
+        }
+        List<RawBsonDocument> documents = new ArrayList<>();
+        for (Path path : segments()) {
+            if (segmentNumber(path) < current) {
+                read(path, documents);
+            }
+        }
+        return documents;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private FileChannel open(long segment) throws IOException {
+        return FileChannel.open(directory.resolve(PREFIX + segment + SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                    && path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void read(Path path, List<RawBsonDocument> documents) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        //every BSON document starts with its own length and ends with a zero byte
+        while (buffer.remaining() >= 5) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 5 || length > buffer.remaining() || buffer.get(buffer.position() + length - 1) != 0) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            documents.add(new RawBsonDocument(bytes));
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,636 @@
+package service.inventory;
+
+import com.mongodb.DBRef;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import model.cab.SeatHoldEntry;
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+import repository.cab.SeatHoldRepository;
+import repository.cab.TicketRepository;
+import repository.cab.TripScheduleRepository;
+import service.idempotency.BookingDeduplicator;
+import service.search.SearchCache;
+import util.DateCodec;
+import util.SeatBitmap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+
+
+/**
+ * Keeps live seat counters and seat bitmaps of active schedules in memory and serves reservations
+ * from them with lock-free compare-and-sets, tickets and schedule state are written to Mongo
+ * asynchronously in batched bulk writes.
+ * <p>
+ * This node is assumed to be the only writer of the schedules it serves. Tickets are the source
+ * of truth: they are appended to a local {@link TicketJournal} before a booking is acknowledged,
+ * on startup the journal is replayed into Mongo and the schedule counters are reconciled against
+ * the stored tickets, both before the web server accepts requests.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "brs.inventory.mode", havingValue = "memory")
+@DependsOn("mongoIndexInitializer")
+public class WriteBehindSeatInventory implements SeatInventory {
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private TripScheduleRepository tripScheduleRepository;
+
+    @Autowired
+    private SeatHoldRepository seatHoldRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private BookingDeduplicator bookingDeduplicator;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    @Value("${brs.inventory.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${brs.inventory.journal-dir:journal}")
+    private String journalDir;
+
+    private TicketJournal journal;
+
+    private final ConcurrentMap<String, ScheduleSeats> schedules = new ConcurrentHashMap<>();
+
+    private final Set<String> dirtySchedules = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentLinkedQueue<Ticket> pendingTickets = new ConcurrentLinkedQueue<>();
+
+    //queued tickets by idempotency key, until they are written
+    private final ConcurrentMap<String, Ticket> pendingKeys = new ConcurrentHashMap<>();
+
+    @Override
+    public SeatReservation reserveSeats(String tripScheduleId, int count) {
+        ScheduleSeats seats = getScheduleSeats(tripScheduleId);
+        if (seats != null) {
+            int[] seatNumbers = seats.reserve(count);
+            if (seatNumbers != null) {
+                changed(tripScheduleId, seats);
+                return new SeatReservation(seats.tripSchedule, seatNumbers);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public SeatReservation claimSeats(String tripScheduleId, int[] seatNumbers) {
+        ScheduleSeats seats = getScheduleSeats(tripScheduleId);
+        if (seats != null && seats.claim(seatNumbers)) {
+            changed(tripScheduleId, seats);
+            return new SeatReservation(seats.tripSchedule, seatNumbers);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean releaseSeats(String tripScheduleId, int[] seatNumbers) {
+        ScheduleSeats seats = getScheduleSeats(tripScheduleId);
+        if (seats != null) {
+            boolean released = seats.release(seatNumbers);
+            changed(tripScheduleId, seats);
+            return released;
+        }
+        return false;
+    }
+
+    @Override
+    public int availableSeats(TripSchedule tripSchedule) {
+        ScheduleSeats seats = schedules.get(tripSchedule.getId());
+        return seats != null ? seats.available() : tripSchedule.getAvailableSeats();
+    }
+
+    @Override
+    public Ticket findByIdempotencyKey(String idempotencyKey) {
+        Ticket ticket = pendingKeys.get(idempotencyKey);
+        return ticket != null ? ticket : ticketRepository.findByIdempotencyKey(idempotencyKey);
+    }
+
+    /**
+     * Queues the tickets once they are journaled. Idempotency keys are checked here against the
+     * queued and the stored tickets, as the unique index only sees the tickets when they are flushed.
+     *
+     * @param tickets
+     */
+    @Override
+    public void saveTickets(List<Ticket> tickets) {
+        List<RawBsonDocument> documents = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            if (ticket.getId() == null) {
+                ticket.setId(new ObjectId().toHexString());
+            }
+            documents.add(toDocument(ticket));
+        }
+        registerKeys(tickets);
+        //appending and queueing under the journal lock keeps the queue in step with the segments
+        synchronized (journal) {
+            try {
+                journal.append(documents);
+            } catch (IOException ex) {
+                forgetKeys(tickets);
+                throw new UncheckedIOException("Could not journal tickets", ex);
+            }
+            pendingTickets.addAll(tickets);
+        }
+    }
+
+    /**
+     * Writes queued tickets with unordered bulk inserts, then the latest counter and bitmap of
+     * every schedule touched since the last flush with a single bulk update. The journal segments
+     * are deleted once every ticket queued in them is stored.
+     */
+    @Scheduled(fixedDelayString = "${brs.inventory.flush-interval-ms:200}")
+    public synchronized void flush() {
+        long segment;
+        int queued;
+        synchronized (journal) {
+            if (pendingTickets.isEmpty()) {
+                flushSchedules();
+                return;
+            }
+            try {
+                segment = journal.roll();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not roll the ticket journal", ex);
+            }
+            queued = pendingTickets.size();
+        }
+        if (flushTickets(queued)) {
+            try {
+                journal.deleteBefore(segment);
+            } catch (IOException ex) {
+                log.warn("Could not delete flushed ticket journal segments", ex);
+            }
+        }
+        flushSchedules();
+    }
+
+    /**
+     * Drops counters of schedules whose trip date is in the past, they can no longer be booked.
+     */
+    @Scheduled(fixedDelayString = "${brs.inventory.evict-interval-ms:3600000}")
+    public void evictPastSchedules() {
+        int today = DateCodec.today();
+        schedules.entrySet().removeIf(entry -> entry.getValue().tripSchedule.getTripDay() < today
+                && !dirtySchedules.contains(entry.getKey()));
+    }
+
+    /**
+     * Replays the tickets journaled before the last shutdown and reconciles the schedules, runs
+     * before the web server starts so no booking is served from a stale counter
+     *
+     * @throws IOException
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        journal = new TicketJournal(Paths.get(journalDir));
+        replayJournal();
+        reconcile();
+    }
+
+    /**
+     * Recovery path, recomputes availableSeats and the seat bitmap of every upcoming schedule from
+     * the tickets actually persisted and the stored seat holds, which repairs state that was not
+     * flushed before the last shutdown. A schedule without any live ticket or hold is reset to
+     * empty, so seats of a ticket cancelled right before a crash are not lost. Lapsed holds count
+     * as taken until their sweep releases them.
+     */
+    @SuppressWarnings("unchecked")
+    public void reconcile() {
+        Aggregation aggregation = newAggregation(
+                match(Criteria.where("journeyDate").gte(DateCodec.today()).and("cancelled").ne(true)),
+                group("tripSchedule").push("seatNumber").as("seats"));
+        Map<String, List<Integer>> takenSeats = new HashMap<>();
+        for (Document result : mongoTemplate.aggregate(aggregation, Ticket.class, Document.class)) {
+            takenSeats.computeIfAbsent(refId(result.get("_id")), id -> new ArrayList<>())
+                    .addAll((List<Integer>) result.get("seats", List.class));
+        }
+        for (SeatHoldEntry seatHold : seatHoldRepository.findAll()) {
+            List<Integer> seats = takenSeats.computeIfAbsent(seatHold.getTripScheduleId(), id -> new ArrayList<>());
+            for (int seatNumber : seatHold.getSeatNumbers()) {
+                seats.add(seatNumber);
+            }
+        }
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TripSchedule.class);
+        int repaired = 0;
+        Query upcoming = new Query(Criteria.where("tripDate").gte(DateCodec.today()));
+        upcoming.fields().exclude("ticketsSold");
+        try (CloseableIterator<TripSchedule> tripSchedules = mongoTemplate.stream(upcoming, TripSchedule.class)) {
+            while (tripSchedules.hasNext()) {
+                TripSchedule tripSchedule = tripSchedules.next();
+                List<Integer> taken = takenSeats.getOrDefault(tripSchedule.getId(), Collections.emptyList());
+                int capacity = tripSchedule.getCabCapacity();
+                int available = Math.max(capacity - taken.size(), 0);
+                long[] seatMap = SeatBitmap.of(capacity, taken);
+                if (available != tripSchedule.getAvailableSeats() || !Arrays.equals(seatMap, tripSchedule.getSeatMap())) {
+                    bulkOperations.updateOne(Query.query(Criteria.where("id").is(tripSchedule.getId())),
+                            Update.update("availableSeats", available).set("seatMap", seatMap));
+                    repaired++;
+                }
+            }
+        }
+        if (repaired > 0) {
+            bulkOperations.execute();
+            log.info("Reconciled seat counters of {} trip schedules", repaired);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        try {
+            flush();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Inserts the journaled tickets, the ones already stored fail as duplicates and are skipped
+     *
+     * @throws IOException
+     */
+    private void replayJournal() throws IOException {
+        List<RawBsonDocument> documents = journal.readClosed();
+        if (!documents.isEmpty()) {
+            try {
+                mongoTemplate.getCollection(mongoTemplate.getCollectionName(Ticket.class))
+                        .withDocumentClass(RawBsonDocument.class)
+                        .insertMany(documents, new InsertManyOptions().ordered(false));
+            } catch (MongoBulkWriteException ex) {
+                List<BulkWriteError> failed = ex.getWriteErrors().stream()
+                        .filter(error -> error.getCode() != DUPLICATE_KEY)
+                        .collect(Collectors.toList());
+                if (!failed.isEmpty()) {
+                    throw ex;
+                }
+            }
+            log.info("Replayed {} journaled tickets", documents.size());
+        }
+        journal.deleteBefore(journal.roll());
+    }
+
+    private void registerKeys(List<Ticket> tickets) {
+        List<Ticket> registered = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            if (ticket.getIdempotencyKey() != null) {
+                if (pendingKeys.putIfAbsent(ticket.getIdempotencyKey(), ticket) != null
+                        || ticketRepository.findByIdempotencyKey(ticket.getIdempotencyKey()) != null) {
+                    pendingKeys.remove(ticket.getIdempotencyKey(), ticket);
+                    forgetKeys(registered);
+                    throw new DuplicateKeyException("Idempotency key " + ticket.getIdempotencyKey() + " is already booked");
+                }
+                registered.add(ticket);
+            }
+        }
+    }
+
+    private void forgetKeys(List<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            if (ticket.getIdempotencyKey() != null) {
+                pendingKeys.remove(ticket.getIdempotencyKey(), ticket);
+            }
+        }
+    }
+
+    private RawBsonDocument toDocument(Ticket ticket) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(ticket, document);
+        return new RawBsonDocument(document, mongoTemplate.getDb().getCodecRegistry().get(Document.class));
+    }
+
+    private ScheduleSeats getScheduleSeats(String tripScheduleId) {
+        ScheduleSeats seats = schedules.get(tripScheduleId);
+        if (seats == null) {
+            Optional<TripSchedule> tripSchedule = tripScheduleRepository.findById(tripScheduleId);
+            if (!tripSchedule.isPresent()) {
+                return null;
+            }
+            ScheduleSeats loaded = new ScheduleSeats(tripSchedule.get());
+            seats = Optional.ofNullable(schedules.putIfAbsent(tripScheduleId, loaded)).orElse(loaded);
+        }
+        return seats;
+    }
+
+    /**
+     * Marks the schedule for the next flush and evicts the cached searches showing its seats
+     */
+    private void changed(String tripScheduleId, ScheduleSeats seats) {
+        dirtySchedules.add(tripScheduleId);
+        searchCache.evictSchedule(seats.tripSchedule.getTripId(), seats.tripSchedule.getTripDate());
+    }
+
+    /**
+     * Inserts the tickets queued when the journal was rolled
+     *
+     * @param queued
+     * @return true if every one of them is stored
+     */
+    private boolean flushTickets(int queued) {
+        //tickets requeued by a failed batch wait for the next flush
+        boolean stored = true;
+        List<Ticket> batch = new ArrayList<>(flushBatchSize);
+        Ticket ticket;
+        while (queued-- > 0 && (ticket = pendingTickets.poll()) != null) {
+            batch.add(ticket);
+            if (batch.size() == flushBatchSize) {
+                stored &= insertTickets(batch);
+                batch = new ArrayList<>(flushBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            stored &= insertTickets(batch);
+        }
+        return stored;
+    }
+
+    private boolean insertTickets(List<Ticket> batch) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Ticket.class).insert(batch).execute();
+            forgetKeys(batch);
+            return true;
+        } catch (BulkOperationException ex) {
+            List<Ticket> stored = new ArrayList<>(batch);
+            List<BulkWriteError> failed = new ArrayList<>();
+            for (BulkWriteError error : ex.getErrors()) {
+                Ticket ticket = batch.get(error.getIndex());
+                if (error.getCode() != DUPLICATE_KEY) {
+                    failed.add(error);
+                    stored.remove(ticket);
+                    pendingTickets.add(ticket);
+                } else if (!ticketRepository.existsById(ticket.getId())) {
+                    //not written by an earlier attempt but booked on another node with the same key
+                    dropDuplicate(ticket);
+                }
+            }
+            forgetKeys(stored);
+            log.warn("Bulk ticket insert partially failed, {} errors", ex.getErrors().size());
+            return failed.isEmpty();
+        } catch (DataAccessException ex) {
+            pendingTickets.addAll(batch);
+            log.warn("Bulk ticket insert failed, {} tickets requeued", batch.size(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Gives the seat of a ticket whose idempotency key was booked first elsewhere back, a retry
+     * of the booking then gets the ticket stored with the key
+     *
+     * @param ticket
+     */
+    private void dropDuplicate(Ticket ticket) {
+        log.warn("Ticket {} dropped, idempotency key {} was already booked", ticket.getId(), ticket.getIdempotencyKey());
+        releaseSeats(ticket.getTripSchedule().getId(), new int[]{ticket.getSeatNumber()});
+        if (ticket.getIdempotencyKey() != null) {
+            bookingDeduplicator.forget(ticket.getIdempotencyKey());
+        }
+    }
+
+    private void flushSchedules() {
+        if (dirtySchedules.isEmpty()) {
+            return;
+        }
+        List<String> flushed = new ArrayList<>(dirtySchedules);
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TripSchedule.class);
+        for (String tripScheduleId : flushed) {
+            dirtySchedules.remove(tripScheduleId);
+            ScheduleSeats seats = schedules.get(tripScheduleId);
+            if (seats != null) {
+                bulkOperations.updateOne(Query.query(Criteria.where("id").is(tripScheduleId)),
+                        Update.update("availableSeats", seats.available()).set("seatMap", seats.seatMap()));
+            }
+        }
+        try {
+            bulkOperations.execute();
+        } catch (DataAccessException ex) {
+            dirtySchedules.addAll(flushed);
+            log.warn("Bulk schedule update failed, {} schedules requeued", flushed.size(), ex);
+        }
+    }
+
+    private static String refId(Object ref) {
+        Object id = ref instanceof DBRef ? ((DBRef) ref).getId() : ((Document) ref).get("$id");
+        return id.toString();
+    }
+
+    /**
+     * Live seats of one schedule. The available counter is the admission gate: a seat bit is only
+     * set after a unit of available was taken, and a unit is only given back for a bit this caller
+     * actually cleared, so the counter never exceeds the clear bits.
+     */
+    static class ScheduleSeats {
+        private final TripSchedule tripSchedule;
+
+        private final int capacity;
+
+        private final AtomicInteger available;
+
+        private final AtomicLongArray bits;
+
+        //every word below this one is known to be full
+        private final AtomicInteger firstFreeWord = new AtomicInteger();
+
+        ScheduleSeats(TripSchedule tripSchedule) {
+            this.tripSchedule = tripSchedule;
+            this.capacity = tripSchedule.getCabCapacity();
+            this.available = new AtomicInteger(tripSchedule.getAvailableSeats());
+            this.bits = new AtomicLongArray(tripSchedule.getSeatMap() != null
+                    ? tripSchedule.getSeatMap()
+                    : SeatBitmap.firstTaken(capacity, capacity - tripSchedule.getAvailableSeats()));
+        }
+
+        /**
+         * Takes the lowest free seats, either all of them or none
+         *
+         * @param count
+         * @return the seat numbers, or null if fewer than count seats are available
+         */
+        int[] reserve(int count) {
+            for (; ; ) {
+                int current = available.get();
+                if (current < count) {
+                    return null;
+                }
+                if (available.compareAndSet(current, current - count)) {
+                    //the counter guarantees the bitmap still has count free seats for this caller
+                    int[] seatNumbers = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        seatNumbers[i] = takeFreeSeat();
+                    }
+                    return seatNumbers;
+                }
+            }
+        }
+
+        /**
+         * Takes the given seats, either all of them or none
+         *
+         * @param seatNumbers
+         * @return false if a seat is taken or does not exist
+         */
+        boolean claim(int[] seatNumbers) {
+            for (int seatNumber : seatNumbers) {
+                if (seatNumber < 0 || seatNumber >= capacity) {
+                    return false;
+                }
+            }
+            if (available.addAndGet(-seatNumbers.length) < 0) {
+                available.addAndGet(seatNumbers.length);
+                return false;
+            }
+            for (int i = 0; i < seatNumbers.length; i++) {
+                if (!takeSeat(seatNumbers[i])) {
+                    for (int j = 0; j < i; j++) {
+                        freeSeat(seatNumbers[j]);
+                    }
+                    available.addAndGet(seatNumbers.length);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Frees the given seats, a seat released concurrently by two callers is only counted once
+         *
+         * @param seatNumbers
+         * @return false if a seat was not taken or does not exist
+         */
+        boolean release(int[] seatNumbers) {
+            for (int seatNumber : seatNumbers) {
+                if (seatNumber < 0 || seatNumber >= capacity) {
+                    return false;
+                }
+            }
+            int freed = 0;
+            for (int seatNumber : seatNumbers) {
+                if (freeSeat(seatNumber)) {
+                    freed++;
+                }
+            }
+            available.addAndGet(freed);
+            return freed == seatNumbers.length;
+        }
+
+        int available() {
+            return available.get();
+        }
+
+        /**
+         * Sets the lowest clear bit, callers must have taken a unit of available first
+         */
+        private int takeFreeSeat() {
+            for (; ; ) {
+                for (int word = firstFreeWord.get(); word < bits.length(); word++) {
+                    long current = bits.get(word);
+                    long free = ~current & SeatBitmap.validMask(capacity, word);
+                    if (free == 0) {
+                        firstFreeWord.compareAndSet(word, word + 1);
+                    } else if (bits.compareAndSet(word, current, current | Long.lowestOneBit(free))) {
+                        return word * SeatBitmap.WORD_SIZE + Long.numberOfTrailingZeros(free);
+                    } else {
+                        word--;
+                    }
+                }
+                //the hint raced past a seat freed concurrently, rescan from the start
+                firstFreeWord.set(0);
+            }
+        }
+
+        private boolean takeSeat(int seatNumber) {
+            int word = seatNumber / SeatBitmap.WORD_SIZE;
+            long mask = SeatBitmap.mask(seatNumber);
+            for (; ; ) {
+                long current = bits.get(word);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Clears the bit of the seat
+         *
+         * @param seatNumber
+         * @return false if the seat was already free
+         */
+        private boolean freeSeat(int seatNumber) {
+            int word = seatNumber / SeatBitmap.WORD_SIZE;
+            long mask = SeatBitmap.mask(seatNumber);
+            for (; ; ) {
+                long current = bits.get(word);
+                if ((current & mask) == 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(word, current, current & ~mask)) {
+                    firstFreeWord.accumulateAndGet(word, Math::min);
+                    return true;
+                }
+            }
+        }
+
+        long[] seatMap() {
+            long[] seatMap = new long[bits.length()];
+            for (int word = 0; word < seatMap.length; word++) {
+                seatMap[word] = bits.get(word);
+            }
+            return seatMap;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package service.lock;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.UUID;
+
+
+/**
+ * Cluster wide lock with a lease, kept as one document per lock name in the joblock collection.
+ * Acquiring is a single upsert that only matches an expired lease or a lease of this node, a live
+ * lease of another node makes the upsert collide on the lock name. A node that dies while holding
+ * the lock blocks others until its lease runs out.
+ */
+@Component
+public class LeaseLock {
+    private static final String COLLECTION = "joblock";
+
+    private final String owner = UUID.randomUUID().toString();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Takes or extends the lease of the lock
+     *
+     * @param name
+     * @param leaseMillis
+     * @return true if this node holds the lock until the lease runs out
+     */
+    public boolean acquire(String name, long leaseMillis) {
+        Date now = new Date();
+        Query query = new Query(Criteria.where("_id").is(name)
+                .orOperator(Criteria.where("lockedUntil").lt(now), Criteria.where("owner").is(owner)));
+        Update update = Update.update("owner", owner).set("lockedUntil", new Date(now.getTime() + leaseMillis));
+        try {
+            return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Document.class, COLLECTION) != null;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Extends the lease of the lock if this node still holds it, for long running holders to call
+     * between steps
+     *
+     * @param name
+     * @param leaseMillis
+     * @return false if another node took the lock, the caller must stop
+     */
+    public boolean renew(String name, long leaseMillis) {
+        return mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(name).and("owner").is(owner)),
+                Update.update("lockedUntil", new Date(System.currentTimeMillis() + leaseMillis)), COLLECTION)
+                .getMatchedCount() > 0;
+    }
+
+    /**
+     * Ends the lease of the lock if this node holds it
+     *
+     * @param name
+     */
+    public void release(String name) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(name).and("owner").is(owner)),
+                Update.update("lockedUntil", new Date(0)), COLLECTION);
+    }
+}
@@ -0,0 +1,183 @@
+package service.pipeline;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import dto.model.cab.BookingStatusDto;
+import dto.model.cab.TicketDto;
+import dto.model.cab.TripScheduleDto;
+import dto.model.user.UserDto;
+import service.CabReservationService;
+import util.TimingWheel;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Asynchronous booking mode. Requests are queued on a bounded pipeline and booked by a small
+ * pool of workers, the request thread only gets a booking reference to poll. Worker bookings go
+ * through CabReservationService.bookTickets, so in the sequenced booking mode their writes are
+ * batched by the single writer of each schedule. Statuses are kept for a limited time. On
+ * shutdown the queued bookings get a bounded time to finish, the ones left over are failed.
+ */
+@Component
+public class BookingPipeline {
+    @Autowired
+    private CabReservationService cabReservationService;
+
+    @Value("${brs.pipeline.workers:4}")
+    private int workers;
+
+    @Value("${brs.pipeline.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${brs.pipeline.status-ttl-seconds:900}")
+    private long statusTtlSeconds;
+
+    @Value("${brs.pipeline.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMillis;
+
+    private final ConcurrentMap<String, Booking> bookings = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    private TimingWheel<String> timingWheel;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "booking-pipeline-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timingWheel = new TimingWheel<>("booking-status-expiry", 1000, 1024, bookings::remove);
+        timingWheel.start();
+    }
+
+    /**
+     * Stops accepting bookings and waits for the queued ones, bookings still queued after the
+     * timeout are failed
+     *
+     * @throws InterruptedException
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                for (Runnable task : executor.shutdownNow()) {
+                    Booking booking = ((BookingTask) task).booking;
+                    booking.status = failed(booking.status, "Booking was not processed before shutdown, retry later.");
+                }
+            }
+        } finally {
+            timingWheel.stop();
+        }
+    }
+
+    /**
+     * Queues a booking
+     *
+     * @param tripScheduleDto
+     * @param userDto
+     * @param seats
+     * @param passengerEmails
+     * @return the pending status, or null if the pipeline is full or shutting down
+     */
+    public BookingStatusDto submit(TripScheduleDto tripScheduleDto, UserDto userDto, int seats, List<String> passengerEmails) {
+        Booking booking = new Booking(userDto.getEmail(), new BookingStatusDto()
+                .setReference(UUID.randomUUID().toString())
+                .setStatus(BookingStatusDto.Status.PENDING)
+                .setSubmittedAt(new Date()));
+        String reference = booking.status.getReference();
+        bookings.put(reference, booking);
+        try {
+            executor.execute(new BookingTask(booking, () -> book(booking, tripScheduleDto, userDto, seats, passengerEmails)));
+        } catch (RejectedExecutionException ex) {
+            bookings.remove(reference);
+            return null;
+        }
+        timingWheel.schedule(reference, statusTtlSeconds * 1000);
+        return booking.status;
+    }
+
+    /**
+     * Returns the status of a booking of the given user
+     *
+     * @param reference
+     * @param email
+     * @return the status, or null if it is unknown, expired or belongs to someone else
+     */
+    public BookingStatusDto status(String reference, String email) {
+        Booking booking = bookings.get(reference);
+        return booking != null && booking.ownerEmail.equals(email) ? booking.status : null;
+    }
+
+    private void book(Booking booking, TripScheduleDto tripScheduleDto, UserDto userDto, int seats, List<String> passengerEmails) {
+        BookingStatusDto pending = booking.status;
+        try {
+            List<TicketDto> tickets = cabReservationService.bookTickets(tripScheduleDto, userDto, seats, passengerEmails);
+            booking.status = tickets.isEmpty()
+                    ? failed(pending, "Unable to process ticket booking.")
+                    : new BookingStatusDto()
+                    .setReference(pending.getReference())
+                    .setSubmittedAt(pending.getSubmittedAt())
+                    .setStatus(BookingStatusDto.Status.CONFIRMED)
+                    .setTickets(tickets);
+        } catch (RuntimeException ex) {
+            booking.status = failed(pending, ex.getMessage());
+        }
+    }
+
+    private static BookingStatusDto failed(BookingStatusDto pending, String error) {
+        return new BookingStatusDto()
+                .setReference(pending.getReference())
+                .setSubmittedAt(pending.getSubmittedAt())
+                .setStatus(BookingStatusDto.Status.FAILED)
+                .setError(error);
+    }
+
+    /**
+     * Queued booking, kept recognizable so the bookings still queued on shutdown can be failed
+     */
+    private static class BookingTask implements Runnable {
+        private final Booking booking;
+
+        private final Runnable work;
+
+        BookingTask(Booking booking, Runnable work) {
+            this.booking = booking;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            work.run();
+        }
+    }
+
+    private static class Booking {
+        private final String ownerEmail;
+
+        private volatile BookingStatusDto status;
+
+        Booking(String ownerEmail, BookingStatusDto status) {
+            this.ownerEmail = ownerEmail;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package service.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import dto.mapper.TripMapper;
+import dto.model.cab.TripDto;
+import model.cab.Trip;
+import model.cab.TripSchedule;
+import repository.cab.TripScheduleRepository;
+import service.lock.LeaseLock;
+import service.search.TripSearchIndex;
+import util.DateCodec;
+import util.DateUtils;
+import util.SeatBitmap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+
+/**
+ * Background job that creates the schedules of every trip for the next horizon-days days, so
+ * bookings rarely have to create one. Agencies are processed in parallel on a small pool of low
+ * priority threads, each reads the existing schedules of a chunk of its trips with one query and
+ * creates the missing ones with unordered bulk upserts. The upserts are idempotent, so a run that
+ * died half way is simply resumed by the next one. A lease lock keeps the job on a single node,
+ * it is renewed before every chunk and the run stops as soon as it is lost.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "brs.schedule.materialize.enabled", havingValue = "true")
+public class ScheduleMaterializer {
+    private static final String LOCK_NAME = "schedule-materializer";
+
+    @Autowired
+    private TripScheduleRepository tripScheduleRepository;
+
+    @Autowired
+    private TripSearchIndex tripSearchIndex;
+
+    @Autowired
+    private LeaseLock leaseLock;
+
+    @Value("${brs.schedule.materialize.horizon-days:30}")
+    private int horizonDays;
+
+    @Value("${brs.schedule.materialize.threads:2}")
+    private int threads;
+
+    @Value("${brs.schedule.materialize.batch-size:500}")
+    private int batchSize;
+
+    @Value("${brs.schedule.materialize.lease-minutes:60}")
+    private long leaseMinutes;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private ExecutorService coordinator;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger count = new AtomicInteger();
+        coordinator = Executors.newSingleThreadExecutor(runnable -> newThread(runnable, "schedule-materializer"));
+        executor = Executors.newFixedThreadPool(threads,
+                runnable -> newThread(runnable, "schedule-materializer-" + count.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        coordinator.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a run off the scheduler thread, so a long run never delays the other scheduled tasks
+     */
+    @Scheduled(cron = "${brs.schedule.materialize.cron:0 30 2 * * *}")
+    public void trigger() {
+        if (running.compareAndSet(false, true)) {
+            coordinator.execute(() -> {
+                try {
+                    materialize();
+                } catch (RuntimeException ex) {
+                    log.error("Schedule materialization failed, the next run resumes it", ex);
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    private void materialize() {
+        if (!leaseLock.acquire(LOCK_NAME, leaseMillis())) {
+            log.debug("Schedule materialization is running on another node");
+            return;
+        }
+        try {
+            int today = DateCodec.today();
+            String fromDate = DateCodec.format(today);
+            String toDate = DateCodec.format(today + horizonDays - 1);
+            Map<String, List<TripDto>> tripsByAgency = tripSearchIndex.getTrips()
+                    .stream()
+                    .collect(Collectors.groupingBy(TripDto::getAgencyCode));
+            AtomicLong created = new AtomicLong();
+            CompletableFuture.allOf(tripsByAgency.values()
+                    .stream()
+                    .map(trips -> CompletableFuture.runAsync(() -> created.addAndGet(materialize(trips, fromDate, toDate)), executor))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+            log.info("Materialized {} trip schedules of {} agencies up to {}", created.get(), tripsByAgency.size(), toDate);
+        } finally {
+            leaseLock.release(LOCK_NAME);
+        }
+    }
+
+    private long leaseMillis() {
+        return leaseMinutes * 60 * 1000;
+    }
+
+    private static Thread newThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    /**
+     * Creates the missing schedules of the given trips, a chunk of trips at a time
+     *
+     * @param trips
+     * @param fromDate
+     * @param toDate
+     * @return the number of schedules created
+     */
+    private long materialize(List<TripDto> trips, String fromDate, String toDate) {
+        List<String> dates = DateUtils.datesBetween(fromDate, toDate);
+        int tripsPerChunk = Math.max(1, batchSize / Math.max(1, dates.size()));
+        long created = 0;
+        for (int from = 0; from < trips.size(); from += tripsPerChunk) {
+            if (!leaseLock.renew(LOCK_NAME, leaseMillis())) {
+                throw new IllegalStateException("Lost the lease of " + LOCK_NAME + " to another node");
+            }
+            List<TripDto> chunk = trips.subList(from, Math.min(from + tripsPerChunk, trips.size()));
+            List<String> tripIds = chunk
+                    .stream()
+                    .map(TripDto::getId)
+                    .collect(Collectors.toList());
+            Set<String> scheduled = new HashSet<>();
+            for (TripSchedule tripSchedule : tripScheduleRepository.findByTripIdsAndDateRange(tripIds, DateCodec.parse(fromDate), DateCodec.parse(toDate))) {
+                scheduled.add(tripSchedule.getTripDetail().getId().concat(":").concat(tripSchedule.getTripDate()));
+            }
+            List<TripSchedule> missing = new ArrayList<>();
+            for (TripDto tripDto : chunk) {
+                String tripId = tripDto.getId();
+                Integer capacity = tripSearchIndex.getCapacity(tripId);
+                for (String tripDate : dates) {
+                    if (capacity != null && !scheduled.contains(tripId.concat(":").concat(tripDate))) {
+                        missing.add(new TripSchedule()
+                                .setTripDetail(new Trip().setId(tripId))
+                                .setTripSnapshot(TripMapper.toTripSnapshot(tripDto, capacity))
+                                .setTripDate(tripDate)
+                                .setAvailableSeats(capacity)
+                                .setSeatMap(SeatBitmap.create(capacity)));
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                created += tripScheduleRepository.insertMissing(missing);
+            }
+        }
+        return created;
+    }
+}
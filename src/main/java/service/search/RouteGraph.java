@@ -0,0 +1,157 @@
+package service.search;
+
+import dto.model.cab.TripDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Immutable stop graph with trips as edges, stored in compressed sparse row form: the outgoing
+ * edges of stop s are edgeTrips[offsets[s]] to edgeTrips[offsets[s + 1] - 1]. Costs are packed
+ * in one long per edge, primary criterion in the high 32 bits and secondary in the low 32 bits,
+ * so summing and comparing packed costs compares itineraries on both criteria at once.
+ */
+public class RouteGraph {
+
+    public enum Criterion {
+        TIME, FARE
+    }
+
+    private final Map<String, Integer> stopIndex;
+
+    private final int[] offsets;
+
+    private final int[] sources;
+
+    private final int[] targets;
+
+    private final TripDto[] edgeTrips;
+
+    RouteGraph(Collection<TripDto> trips) {
+        stopIndex = new HashMap<>();
+        for (TripDto trip : trips) {
+            stopIndex.putIfAbsent(trip.getSourceStopCode(), stopIndex.size());
+            stopIndex.putIfAbsent(trip.getDestinationStopCode(), stopIndex.size());
+        }
+        offsets = new int[stopIndex.size() + 1];
+        for (TripDto trip : trips) {
+            offsets[stopIndex.get(trip.getSourceStopCode()) + 1]++;
+        }
+        for (int stop = 0; stop < stopIndex.size(); stop++) {
+            offsets[stop + 1] += offsets[stop];
+        }
+        sources = new int[trips.size()];
+        targets = new int[trips.size()];
+        edgeTrips = new TripDto[trips.size()];
+        int[] next = Arrays.copyOf(offsets, stopIndex.size());
+        for (TripDto trip : trips) {
+            int source = stopIndex.get(trip.getSourceStopCode());
+            int edge = next[source]++;
+            sources[edge] = source;
+            targets[edge] = stopIndex.get(trip.getDestinationStopCode());
+            edgeTrips[edge] = trip;
+        }
+    }
+
+    /**
+     * Finds the cheapest itinerary for every number of legs up to maxLegs. Round k relaxes the
+     * outgoing edges of the stops reached in round k - 1 only, so a search costs at most maxLegs
+     * passes over the edges of the reached stops.
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param maxLegs
+     * @param criterion
+     * @return the itineraries, each a list of trips, fewest legs first
+     */
+    public List<List<TripDto>> search(String sourceStopCode, String destinationStopCode, int maxLegs, Criterion criterion) {
+        Integer source = stopIndex.get(sourceStopCode);
+        Integer destination = stopIndex.get(destinationStopCode);
+        if (source == null || destination == null || source.equals(destination)) {
+            return Collections.emptyList();
+        }
+        int stops = stopIndex.size();
+        long[][] cost = new long[maxLegs + 1][];
+        int[][] via = new int[maxLegs + 1][];
+        int[] reached = {source};
+        int reachedCount = 1;
+        cost[0] = new long[stops];
+        Arrays.fill(cost[0], Long.MAX_VALUE);
+        cost[0][source] = 0;
+        List<List<TripDto>> itineraries = new ArrayList<>(maxLegs);
+        for (int round = 1; round <= maxLegs && reachedCount > 0; round++) {
+            long[] previous = cost[round - 1];
+            long[] current = new long[stops];
+            int[] edges = new int[stops];
+            Arrays.fill(current, Long.MAX_VALUE);
+            int[] improved = new int[Math.min(stops, targets.length)];
+            int improvedCount = 0;
+            for (int i = 0; i < reachedCount; i++) {
+                int stop = reached[i];
+                for (int edge = offsets[stop]; edge < offsets[stop + 1]; edge++) {
+                    int target = targets[edge];
+                    if (target == source || visits(via, round - 1, stop, target)) {
+                        continue;
+                    }
+                    long candidate = previous[stop] + cost(edgeTrips[edge], criterion);
+                    if (candidate < current[target]) {
+                        if (current[target] == Long.MAX_VALUE) {
+                            improved[improvedCount++] = target;
+                        }
+                        current[target] = candidate;
+                        edges[target] = edge;
+                    }
+                }
+            }
+            cost[round] = current;
+            via[round] = edges;
+            if (current[destination] != Long.MAX_VALUE) {
+                itineraries.add(path(via, round, destination));
+            }
+            //nothing is gained by travelling on from the destination
+            reached = improved;
+            reachedCount = 0;
+            for (int i = 0; i < improvedCount; i++) {
+                if (improved[i] != destination) {
+                    reached[reachedCount++] = improved[i];
+                }
+            }
+        }
+        return itineraries;
+    }
+
+    private static long cost(TripDto trip, Criterion criterion) {
+        return criterion == Criterion.TIME
+                ? ((long) trip.getJourneyTime() << 32) + trip.getFare()
+                : ((long) trip.getFare() << 32) + trip.getJourneyTime();
+    }
+
+    /**
+     * Returns true if the best path with the given number of legs to stop passes through target
+     */
+    private boolean visits(int[][] via, int legs, int stop, int target) {
+        for (int round = legs; round > 0; round--) {
+            stop = sources[via[round][stop]];
+            if (stop == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<TripDto> path(int[][] via, int legs, int stop) {
+        TripDto[] trips = new TripDto[legs];
+        for (int round = legs; round > 0; round--) {
+            int edge = via[round][stop];
+            trips[round - 1] = edgeTrips[edge];
+            stop = sources[edge];
+        }
+        return Arrays.asList(trips);
+    }
+}
@@ -0,0 +1,154 @@
+package service.search;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import dto.model.cab.TripDto;
+import dto.model.cab.TripScheduleDto;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+
+/**
+ * Bounded cache of schedule search results keyed by (source stop code, destination stop code, date).
+ * Entries are evicted least recently used first once the cache is full and expire after a fixed
+ * time, which bounds how stale seat counts changed by other nodes can get. Changes made on this
+ * node evict exactly the entry of the route and day they touch.
+ * <p>
+ * Concurrent misses on the same key share one load: the first search puts a pending entry in the
+ * cache and runs the loader outside the lock, the others wait for its result. A search that was
+ * running while its entry got evicted does not keep its result: the eviction removes the pending
+ * entry and the result is only given an expiry time if the entry is still in place afterwards.
+ * A failed load is removed from the cache, so the next search retries it.
+ */
+@Component
+public class SearchCache {
+    private static final String SEPARATOR = ":";
+
+    @Autowired
+    private TripSearchIndex tripSearchIndex;
+
+    @Value("${brs.search.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${brs.search.cache.ttl-ms:30000}")
+    private long ttlMillis;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * Returns the cached schedules of a route on a day, or loads and caches them
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @param tripDate
+     * @param loader
+     * @return
+     */
+    public List<TripScheduleDto> get(String sourceStopCode, String destinationStopCode, String tripDate,
+                                     Supplier<List<TripScheduleDto>> loader) {
+        String key = key(sourceStopCode, destinationStopCode, tripDate);
+        Entry entry;
+        boolean loading;
+        synchronized (entries) {
+            entry = entries.get(key);
+            loading = entry == null || (entry.schedules.isDone() && entry.expiresAt <= System.currentTimeMillis());
+            if (loading) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+        }
+        if (!loading) {
+            return await(entry.schedules);
+        }
+        List<TripScheduleDto> schedules;
+        try {
+            schedules = Collections.unmodifiableList(loader.get());
+        } catch (RuntimeException | Error ex) {
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.schedules.completeExceptionally(ex);
+            throw ex;
+        }
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+            }
+        }
+        entry.schedules.complete(schedules);
+        return schedules;
+    }
+
+    /**
+     * Evicts the search results that contain the schedule of the trip on the given day
+     *
+     * @param tripId
+     * @param tripDate
+     */
+    public void evictSchedule(String tripId, String tripDate) {
+        //a trip written on another node is not indexed until it is read here
+        TripDto tripDto = tripSearchIndex.load(tripId);
+        if (tripDto != null) {
+            synchronized (entries) {
+                entries.remove(key(tripDto.getSourceStopCode(), tripDto.getDestinationStopCode(), tripDate));
+            }
+        }
+    }
+
+    /**
+     * Evicts the search results of a route on every day
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     */
+    public void evictRoute(String sourceStopCode, String destinationStopCode) {
+        String prefix = sourceStopCode + SEPARATOR + destinationStopCode + SEPARATOR;
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private static String key(String sourceStopCode, String destinationStopCode, String tripDate) {
+        return sourceStopCode + SEPARATOR + destinationStopCode + SEPARATOR + tripDate;
+    }
+
+    /**
+     * Waits for a load started by another search
+     *
+     * @param schedules
+     * @return
+     */
+    private static List<TripScheduleDto> await(CompletableFuture<List<TripScheduleDto>> schedules) {
+        try {
+            return schedules.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private static class Entry {
+        private final CompletableFuture<List<TripScheduleDto>> schedules = new CompletableFuture<>();
+
+        //written once the load completes, until then the entry is pending and never expires
+        private long expiresAt = Long.MAX_VALUE;
+    }
+}
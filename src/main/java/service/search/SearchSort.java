@@ -0,0 +1,37 @@
+package service.search;
+
+import java.util.Comparator;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * Ranking options of trip and schedule searches. Ties are broken by journey time, then fare.
+ */
+public enum SearchSort {
+    CHEAPEST, FASTEST, FEWEST_LEGS, BEST_AVAILABILITY;
+
+    /**
+     * Returns the comparator ranking items of any type on this option, best first
+     *
+     * @param fare
+     * @param journeyTime
+     * @param legs
+     * @param availableSeats
+     * @param <T>
+     * @return
+     */
+    public <T> Comparator<T> comparator(ToIntFunction<T> fare, ToIntFunction<T> journeyTime,
+                                        ToIntFunction<T> legs, ToIntFunction<T> availableSeats) {
+        Comparator<T> tieBreak = Comparator.comparingInt(journeyTime).thenComparingInt(fare);
+        switch (this) {
+            case CHEAPEST:
+                return Comparator.comparingInt(fare).thenComparing(Comparator.comparingInt(journeyTime));
+            case FEWEST_LEGS:
+                return Comparator.comparingInt(legs).thenComparing(tieBreak);
+            case BEST_AVAILABILITY:
+                return Comparator.<T>comparingInt(item -> -availableSeats.applyAsInt(item)).thenComparing(tieBreak);
+            default:
+                return tieBreak;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package service.search;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import dto.mapper.StopMapper;
+import dto.model.cab.StopDto;
+import repository.cab.StopRepository;
+import util.KdTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+/**
+ * Nearest stop index. Stops with a location are placed on the unit sphere as x, y, z points of a
+ * k-d tree, the straight line distance between two such points grows with their great circle
+ * distance, so the nearest points in the tree are the nearest stops on the globe, across the
+ * poles and the date line alike. The tree is replaced, never modified, so lookups need no locking.
+ */
+@Component
+public class StopGeoIndex {
+
+    @Autowired
+    private StopRepository stopRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<>());
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${brs.search.refresh-interval-ms:300000}", fixedDelayString = "${brs.search.refresh-interval-ms:300000}")
+    public void rebuild() {
+        snapshot = new Snapshot(stopRepository.findAll()
+                .stream()
+                .filter(stop -> stop.getLocation() != null)
+                .map(StopMapper::toStopDto)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns up to limit stops closest to the given point, closest first
+     *
+     * @param latitude
+     * @param longitude
+     * @param limit
+     * @return
+     */
+    public List<StopDto> nearest(double latitude, double longitude, int limit) {
+        Snapshot current = snapshot;
+        double[] point = toPoint(latitude, longitude);
+        int[] nearest = current.tree.nearest(point[0], point[1], point[2], limit);
+        List<StopDto> stops = new ArrayList<>(nearest.length);
+        for (int index : nearest) {
+            stops.add(current.stops[index]);
+        }
+        return stops;
+    }
+
+    private static double[] toPoint(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        return new double[]{Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    private static class Snapshot {
+        private final StopDto[] stops;
+
+        private final KdTree tree;
+
+        Snapshot(List<StopDto> stops) {
+            this.stops = stops.toArray(new StopDto[0]);
+            double[] xs = new double[this.stops.length];
+            double[] ys = new double[this.stops.length];
+            double[] zs = new double[this.stops.length];
+            for (int i = 0; i < this.stops.length; i++) {
+                double[] point = toPoint(this.stops[i].getLatitude(), this.stops[i].getLongitude());
+                xs[i] = point[0];
+                ys[i] = point[1];
+                zs[i] = point[2];
+            }
+            this.tree = new KdTree(xs, ys, zs);
+        }
+    }
+}
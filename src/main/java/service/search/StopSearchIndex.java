@@ -0,0 +1,150 @@
+package service.search;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import dto.mapper.StopMapper;
+import dto.model.cab.StopDto;
+import repository.cab.StopRepository;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+
+/**
+ * Typeahead index over stop codes, names and details. Every stop contributes its folded code,
+ * name and detail plus each of their words as keys of one sorted array, a prefix lookup is a
+ * binary search for the first key not below the prefix followed by a short forward scan.
+ * Keys are folded to lower case without accents, so "sao" finds "São Paulo". Stops are only
+ * written outside the application, the array is rebuilt periodically and replaced, never
+ * modified, so lookups need no locking.
+ */
+@Component
+public class StopSearchIndex {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern WORD_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Comparator<Entry> BY_KEY = Comparator.comparing(entry -> entry.key);
+
+    //bounds the scan of very short prefixes
+    private static final int SCAN_FACTOR = 16;
+
+    @Autowired
+    private StopRepository stopRepository;
+
+    private volatile Entry[] entries = new Entry[0];
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${brs.search.refresh-interval-ms:300000}", fixedDelayString = "${brs.search.refresh-interval-ms:300000}")
+    public void rebuild() {
+        entries = index(stopRepository.findAll()
+                .stream()
+                .map(StopMapper::toStopDto)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns up to limit stops with a code, name, detail or word of them starting with the prefix,
+     * matches on shorter keys first
+     *
+     * @param prefix
+     * @param limit
+     * @return
+     */
+    public List<StopDto> search(String prefix, int limit) {
+        String folded = fold(prefix).trim();
+        Entry[] current = entries;
+        if (folded.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int low = 0;
+        int high = current.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (current[mid].key.compareTo(folded) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Entry> matches = new ArrayList<>();
+        for (int i = low; i < current.length && i < low + limit * SCAN_FACTOR && current[i].key.startsWith(folded); i++) {
+            matches.add(current[i]);
+        }
+        matches.sort(Comparator.comparingInt(entry -> entry.key.length()));
+        Map<String, StopDto> found = new LinkedHashMap<>();
+        for (Entry match : matches) {
+            if (found.size() == limit) {
+                break;
+            }
+            found.putIfAbsent(match.stop.getCode(), match.stop);
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * Lower cases the text and strips its accents
+     *
+     * @param text
+     * @return
+     */
+    public static String fold(String text) {
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static Entry[] index(Collection<StopDto> stops) {
+        List<Entry> index = new ArrayList<>();
+        for (StopDto stop : stops) {
+            for (String text : Arrays.asList(stop.getCode(), stop.getName(), stop.getDetail())) {
+                if (text == null) {
+                    continue;
+                }
+                String folded = fold(text).trim();
+                index.add(new Entry(folded, stop));
+                for (String word : WORD_SEPARATORS.split(folded)) {
+                    if (!word.isEmpty() && !word.equals(folded)) {
+                        index.add(new Entry(word, stop));
+                    }
+                }
+            }
+        }
+        Entry[] sorted = index.stream().distinct().toArray(Entry[]::new);
+        Arrays.sort(sorted, BY_KEY);
+        return sorted;
+    }
+
+    private static class Entry {
+        private final String key;
+
+        private final StopDto stop;
+
+        Entry(String key, StopDto stop) {
+            this.key = key;
+            this.stop = stop;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && ((Entry) o).key.equals(key) && ((Entry) o).stop.getCode().equals(stop.getCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + stop.getCode().hashCode();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package service.search;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import model.cab.Trip;
+
+
+/**
+ * Indexes every trip saved through the repositories and drops deleted ones, so the trip search
+ * index does not wait for its next rebuild to see writes made on this node
+ */
+@Component
+public class TripIndexUpdater extends AbstractMongoEventListener<Trip> {
+    @Autowired
+    private TripSearchIndex tripSearchIndex;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Trip> event) {
+        tripSearchIndex.add(event.getSource());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Trip> event) {
+        //deletes by query leave their trips to the rebuild
+        Object id = event.getSource().get("_id");
+        if (id != null && !(id instanceof Document)) {
+            tripSearchIndex.remove(id.toString());
+        }
+    }
+}
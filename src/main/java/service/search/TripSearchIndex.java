@@ -0,0 +1,313 @@
+package service.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import dto.mapper.TripMapper;
+import dto.model.cab.TripDto;
+import model.cab.Stop;
+import model.cab.Trip;
+import repository.cab.StopRepository;
+import repository.cab.TripRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+
+/**
+ * Memory resident index of all trips keyed by their (source stop code, destination stop code) pair.
+ * Trips are mapped to their dtos once, with every DBRef already resolved, so a search is a single
+ * hash lookup. Trips saved or deleted on this node and trips whose snapshot changed are indexed
+ * right away, a periodic rebuild picks up trips written by other nodes.
+ * <p>
+ * Changes made while a rebuild runs go to both the live index and the one being built, and the
+ * rebuild does not overwrite a trip changed after it started, so no change is lost by the swap.
+ */
+@Slf4j
+@Component
+public class TripSearchIndex {
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private StopRepository stopRepository;
+
+    private volatile Index index = new Index();
+
+    private volatile Index building;
+
+    private final Object rebuildLock = new Object();
+
+    private volatile boolean ready;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile VersionedGraph routeGraph;
+
+    /**
+     * Rebuilds the whole index from the trip and stop collections and swaps it in
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${brs.search.refresh-interval-ms:300000}", fixedDelayString = "${brs.search.refresh-interval-ms:300000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            Index rebuilt = new Index();
+            building = rebuilt;
+            List<Trip> trips;
+            try {
+                for (Stop stop : stopRepository.findAll()) {
+                    rebuilt.stopCodes.add(stop.getCode());
+                }
+                trips = tripRepository.findAll();
+                for (Trip trip : trips) {
+                    rebuilt.load(TripMapper.toTripDto(trip), trip.getCabCapacity());
+                }
+                index = rebuilt;
+            } finally {
+                building = null;
+            }
+            version.incrementAndGet();
+            ready = true;
+            log.info("Indexed {} trips over {} stops", trips.size(), rebuilt.stopCodes.size());
+        }
+    }
+
+    /**
+     * Indexes a trip saved on this node, replacing its previous entry
+     *
+     * @param trip
+     */
+    public void add(Trip trip) {
+        TripDto tripDto = TripMapper.toTripDto(trip);
+        int capacity = trip.getCabCapacity();
+        apply(target -> target.change(tripDto, capacity));
+    }
+
+    /**
+     * Re-reads trips whose stored fields changed and indexes them again, trips that no longer
+     * exist are dropped
+     *
+     * @param tripIds
+     * @return the trips indexed again
+     */
+    public List<TripDto> refresh(Collection<String> tripIds) {
+        Set<String> missing = new HashSet<>(tripIds);
+        List<TripDto> refreshed = new ArrayList<>();
+        for (Trip trip : tripRepository.findAllById(tripIds)) {
+            missing.remove(trip.getId());
+            add(trip);
+            refreshed.add(getTrip(trip.getId()));
+        }
+        missing.forEach(this::remove);
+        return refreshed;
+    }
+
+    /**
+     * Drops a deleted trip
+     *
+     * @param tripId
+     */
+    public void remove(String tripId) {
+        apply(target -> target.remove(tripId));
+    }
+
+    /**
+     * Returns the trips between two stops
+     *
+     * @param sourceStopCode
+     * @param destinationStopCode
+     * @return the trips, or null if the index is not built yet or does not know one of the stops
+     */
+    public List<TripDto> findTrips(String sourceStopCode, String destinationStopCode) {
+        Index current = index;
+        List<TripDto> trips = current.tripsByStops.get(key(sourceStopCode, destinationStopCode));
+        if (trips != null) {
+            return trips;
+        }
+        if (ready && current.stopCodes.contains(sourceStopCode) && current.stopCodes.contains(destinationStopCode)) {
+            return Collections.emptyList();
+        }
+        return null;
+    }
+
+    /**
+     * Returns an indexed trip
+     *
+     * @param tripId
+     * @return the trip, or null if it is not indexed
+     */
+    public TripDto getTrip(String tripId) {
+        return index.tripsById.get(tripId);
+    }
+
+    /**
+     * Returns an indexed trip, a trip that is not indexed yet is read and indexed
+     *
+     * @param tripId
+     * @return the trip, or null if it does not exist
+     */
+    public TripDto load(String tripId) {
+        TripDto tripDto = getTrip(tripId);
+        if (tripDto != null) {
+            return tripDto;
+        }
+        Optional<Trip> trip = tripRepository.findById(tripId);
+        trip.ifPresent(this::add);
+        return trip.map(TripMapper::toTripDto).orElse(null);
+    }
+
+    /**
+     * Returns all indexed trips
+     *
+     * @return
+     */
+    public Collection<TripDto> getTrips() {
+        return Collections.unmodifiableCollection(index.tripsById.values());
+    }
+
+    /**
+     * Returns the seat capacity of the cab of an indexed trip
+     *
+     * @param tripId
+     * @return the capacity, or null if the trip is not indexed
+     */
+    public Integer getCapacity(String tripId) {
+        return index.capacities.get(tripId);
+    }
+
+    /**
+     * Returns the route graph of the indexed trips, rebuilt on first use after the trips changed
+     *
+     * @return
+     */
+    public RouteGraph getRouteGraph() {
+        VersionedGraph graph = routeGraph;
+        if (graph == null || graph.version != version.get()) {
+            synchronized (this) {
+                graph = routeGraph;
+                long current = version.get();
+                if (graph == null || graph.version != current) {
+                    //trips added while building bump the version, so the next search rebuilds again
+                    graph = new VersionedGraph(current, new RouteGraph(new ArrayList<>(index.tripsById.values())));
+                    routeGraph = graph;
+                }
+            }
+        }
+        return graph.graph;
+    }
+
+    /**
+     * Applies a change to the live index and to the one being rebuilt, if any. The rebuild is read
+     * first: if none runs, the live index read after it is the latest one, and a rebuild starting
+     * later reads the change from the collection.
+     *
+     * @param change
+     */
+    private void apply(Consumer<Index> change) {
+        Index rebuilding = building;
+        Index current = index;
+        change.accept(current);
+        if (rebuilding != null && rebuilding != current) {
+            change.accept(rebuilding);
+        }
+        version.incrementAndGet();
+    }
+
+    private static String key(String sourceStopCode, String destinationStopCode) {
+        return sourceStopCode.concat("\u0000").concat(destinationStopCode);
+    }
+
+    private static class VersionedGraph {
+        private final long version;
+
+        private final RouteGraph graph;
+
+        VersionedGraph(long version, RouteGraph graph) {
+            this.version = version;
+            this.graph = graph;
+        }
+    }
+
+    private static class Index {
+        private final Map<String, List<TripDto>> tripsByStops = new ConcurrentHashMap<>();
+
+        private final Map<String, TripDto> tripsById = new ConcurrentHashMap<>();
+
+        private final Map<String, Integer> capacities = new ConcurrentHashMap<>();
+
+        private final Set<String> stopCodes = ConcurrentHashMap.newKeySet();
+
+        //trips changed since the index was created, loading must not overwrite them
+        private final Set<String> changed = new HashSet<>();
+
+        /**
+         * Indexes a trip read by the rebuild unless it changed since the rebuild started
+         *
+         * @param tripDto
+         * @param capacity
+         */
+        synchronized void load(TripDto tripDto, int capacity) {
+            if (!changed.contains(tripDto.getId())) {
+                put(tripDto, capacity);
+            }
+        }
+
+        synchronized void change(TripDto tripDto, int capacity) {
+            changed.add(tripDto.getId());
+            put(tripDto, capacity);
+        }
+
+        synchronized void remove(String tripId) {
+            changed.add(tripId);
+            capacities.remove(tripId);
+            TripDto previous = tripsById.remove(tripId);
+            if (previous != null) {
+                unlink(previous);
+            }
+        }
+
+        /**
+         * Lists are replaced, never modified, so readers always see a consistent list
+         *
+         * @param tripDto
+         * @param capacity
+         */
+        private void put(TripDto tripDto, int capacity) {
+            stopCodes.add(tripDto.getSourceStopCode());
+            stopCodes.add(tripDto.getDestinationStopCode());
+            capacities.put(tripDto.getId(), capacity);
+            TripDto previous = tripsById.put(tripDto.getId(), tripDto);
+            String tripKey = key(tripDto.getSourceStopCode(), tripDto.getDestinationStopCode());
+            if (previous != null && !key(previous.getSourceStopCode(), previous.getDestinationStopCode()).equals(tripKey)) {
+                unlink(previous);
+            }
+            tripsByStops.compute(tripKey, (key, trips) -> {
+                List<TripDto> updated = trips != null ? new ArrayList<>(trips) : new ArrayList<>(1);
+                updated.removeIf(trip -> trip.getId().equals(tripDto.getId()));
+                updated.add(tripDto);
+                return Collections.unmodifiableList(updated);
+            });
+        }
+
+        private void unlink(TripDto tripDto) {
+            tripsByStops.computeIfPresent(key(tripDto.getSourceStopCode(), tripDto.getDestinationStopCode()), (key, trips) -> {
+                List<TripDto> updated = new ArrayList<>(trips);
+                updated.removeIf(trip -> trip.getId().equals(tripDto.getId()));
+                return updated.isEmpty() ? null : Collections.unmodifiableList(updated);
+            });
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package service.sequencer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import exception.BRSException;
+import model.cab.Ticket;
+import model.user.User;
+import service.inventory.SeatInventory;
+import service.inventory.SeatReservation;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static exception.EntityType.TRIPSCHEDULE;
+import static exception.ExceptionType.ENTITY_EXCEPTION;
+
+
+/**
+ * Single-writer booking mode. Bookings are routed by trip schedule to one of a fixed number of
+ * partitions, each drained by its own writer thread, so a schedule only ever has one writer.
+ * The writer takes whatever queued up since its last pass and reserves the seats of every
+ * schedule in the batch with one inventory call, then saves all tickets of the batch with one
+ * bulk write and acknowledges the whole batch. Under load batches grow instead of writers
+ * contending on the same document. A request is claimed by its writer before it takes seats,
+ * until then the caller can withdraw it by cancelling its future.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "brs.booking.mode", havingValue = "sequenced")
+public class BookingSequencer {
+    @Autowired
+    private SeatInventory seatInventory;
+
+    @Value("${brs.booking.partitions:4}")
+    private int partitions;
+
+    @Value("${brs.booking.queue-capacity:4096}")
+    private int queueCapacity;
+
+    @Value("${brs.booking.batch-size:256}")
+    private int batchSize;
+
+    private List<BlockingQueue<BookingRequest>> queues;
+
+    private List<Thread> writers;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        queues = new ArrayList<>(partitions);
+        writers = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            BlockingQueue<BookingRequest> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread writer = new Thread(() -> drain(queue), "booking-writer-" + partition);
+            writer.setDaemon(true);
+            queues.add(queue);
+            writers.add(writer);
+            writer.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Queues a booking on the partition of its schedule
+     *
+     * @param tripScheduleId
+     * @param passengers     one seat is booked per passenger
+     * @return the issued tickets, or an empty list if the schedule has too few seats left. Cancelling
+     * it withdraws the booking and returns false once the writer started it, its outcome follows then
+     */
+    public CompletableFuture<List<Ticket>> submit(String tripScheduleId, List<User> passengers) {
+        BookingRequest request = new BookingRequest(tripScheduleId, passengers);
+        if (!queues.get(partition(tripScheduleId)).offer(request)) {
+            request.completeExceptionally(BRSException.throwException(TRIPSCHEDULE, ENTITY_EXCEPTION, tripScheduleId));
+        }
+        return request;
+    }
+
+    private int partition(String tripScheduleId) {
+        return (tripScheduleId.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    private void drain(BlockingQueue<BookingRequest> queue) {
+        List<BookingRequest> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                apply(batch);
+            } catch (RuntimeException ex) {
+                log.error("Booking batch of {} requests failed", batch.size(), ex);
+                batch.forEach(request -> request.completeExceptionally(ex));
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Applies a batch in arrival order: one reservation per schedule when all of its requests fit,
+     * otherwise request by request so earlier requests keep their priority
+     *
+     * @param batch
+     */
+    private void apply(List<BookingRequest> batch) {
+        Map<String, List<BookingRequest>> requestsBySchedule = new LinkedHashMap<>();
+        for (BookingRequest request : batch) {
+            //requests withdrawn by their caller are dropped before they take seats
+            if (request.claim()) {
+                requestsBySchedule.computeIfAbsent(request.tripScheduleId, id -> new ArrayList<>()).add(request);
+            }
+        }
+        List<Ticket> tickets = new ArrayList<>();
+        List<SeatReservation> reservations = new ArrayList<>();
+        for (Map.Entry<String, List<BookingRequest>> schedule : requestsBySchedule.entrySet()) {
+            int seats = schedule.getValue().stream().mapToInt(request -> request.passengers.size()).sum();
+            SeatReservation combined = seatInventory.reserveSeats(schedule.getKey(), seats);
+            int offset = 0;
+            for (BookingRequest request : schedule.getValue()) {
+                SeatReservation reservation = combined != null
+                        ? combined.slice(offset, offset + request.passengers.size())
+                        : seatInventory.reserveSeats(schedule.getKey(), request.passengers.size());
+                offset += request.passengers.size();
+                if (reservation != null) {
+                    request.tickets = reservation.toTickets(request.passengers, null);
+                    tickets.addAll(request.tickets);
+                    reservations.add(reservation);
+                } else {
+                    request.tickets = Collections.emptyList();
+                }
+            }
+        }
+        try {
+            if (!tickets.isEmpty()) {
+                seatInventory.saveTickets(tickets);
+            }
+        } catch (RuntimeException ex) {
+            reservations.forEach(reservation -> seatInventory.releaseSeats(reservation.getTripSchedule().getId(), reservation.getSeatNumbers()));
+            throw ex;
+        }
+        requestsBySchedule.values().forEach(requests -> requests.forEach(request -> request.complete(request.tickets)));
+    }
+
+    /**
+     * Queued booking and its outcome. Cancelling and claiming race on one flag, so a request is
+     * either withdrawn untouched or always completed by its writer.
+     */
+    private static class BookingRequest extends CompletableFuture<List<Ticket>> {
+        private final String tripScheduleId;
+
+        private final List<User> passengers;
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private List<Ticket> tickets;
+
+        BookingRequest(String tripScheduleId, List<User> passengers) {
+            this.tripScheduleId = tripScheduleId;
+            this.passengers = passengers;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claim() && super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package service.snapshot;
+
+import com.mongodb.DBRef;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+import model.cab.PassengerSnapshot;
+import model.cab.Ticket;
+import model.cab.Trip;
+import model.cab.TripSchedule;
+import model.cab.TripSnapshot;
+import model.user.User;
+import service.lock.LeaseLock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+
+/**
+ * One-off backfill of the snapshots embedded in trips, schedules and tickets written before
+ * they carried them. Runs once on startup when enabled, on a background thread and on one node
+ * of the cluster at a time. Every step only touches documents still without a snapshot, so an
+ * interrupted run is resumed by the next one.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "brs.snapshot.migrate.enabled", havingValue = "true")
+public class SnapshotMigration {
+    private static final String LOCK_NAME = "snapshot-migration";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private LeaseLock leaseLock;
+
+    @Value("${brs.snapshot.migrate.batch-size:500}")
+    private int batchSize;
+
+    @Value("${brs.snapshot.migrate.lease-minutes:60}")
+    private long leaseMinutes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread thread = new Thread(this::run, "snapshot-migration");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void run() {
+        if (!leaseLock.acquire(LOCK_NAME, TimeUnit.MINUTES.toMillis(leaseMinutes))) {
+            log.info("Snapshot migration is running on another node");
+            return;
+        }
+        try {
+            Map<String, TripSnapshot> trips = migrateTrips();
+            long schedules = migrateSchedules(trips);
+            long tickets = migrateTickets(trips);
+            log.info("Snapshot migration done over {} trips, {} schedules and {} tickets backfilled", trips.size(), schedules, tickets);
+        } catch (RuntimeException ex) {
+            log.error("Snapshot migration failed, the next run resumes it", ex);
+        } finally {
+            leaseLock.release(LOCK_NAME);
+        }
+    }
+
+    /**
+     * Sets the snapshot of every trip without one
+     *
+     * @return the snapshots of all trips by trip id
+     */
+    private Map<String, TripSnapshot> migrateTrips() {
+        Map<String, TripSnapshot> snapshots = new HashMap<>();
+        BulkOperations bulkOperations = null;
+        int pending = 0;
+        try (CloseableIterator<Trip> trips = mongoTemplate.stream(new Query(), Trip.class)) {
+            while (trips.hasNext()) {
+                Trip trip = trips.next();
+                if (trip.getSnapshot() != null) {
+                    snapshots.put(trip.getId(), trip.getSnapshot());
+                    continue;
+                }
+                TripSnapshot snapshot;
+                try {
+                    snapshot = TripSnapshot.of(trip);
+                } catch (RuntimeException ex) {
+                    //dangling reference, the trip keeps reading through its references
+                    log.warn("Trip {} has no snapshot and cannot get one", trip.getId(), ex);
+                    continue;
+                }
+                snapshots.put(trip.getId(), snapshot);
+                if (bulkOperations == null) {
+                    bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Trip.class);
+                }
+                bulkOperations.updateOne(new Query(Criteria.where("id").is(trip.getId())), Update.update("snapshot", snapshot));
+                if (++pending == batchSize) {
+                    bulkOperations.execute();
+                    bulkOperations = null;
+                    pending = 0;
+                }
+            }
+        }
+        if (bulkOperations != null) {
+            bulkOperations.execute();
+        }
+        return snapshots;
+    }
+
+    /**
+     * Sets the trip snapshot of the schedules without one, one multi update per trip
+     *
+     * @param trips
+     * @return
+     */
+    private long migrateSchedules(Map<String, TripSnapshot> trips) {
+        long updated = 0;
+        for (Map.Entry<String, TripSnapshot> trip : trips.entrySet()) {
+            updated += mongoTemplate.updateMulti(new Query(Criteria.where("tripDetail").is(tripRef(trip.getKey()))
+                            .and("tripSnapshot").exists(false)),
+                    Update.update("tripSnapshot", trip.getValue()), TripSchedule.class).getModifiedCount();
+        }
+        return updated;
+    }
+
+    /**
+     * Sets the trip and passenger snapshots of the tickets without them. Tickets are read raw
+     * in batches, the trips of their schedules and their passengers with one query per batch.
+     *
+     * @param trips
+     * @return
+     */
+    private long migrateTickets(Map<String, TripSnapshot> trips) {
+        Query query = new Query(Criteria.where("tripSnapshot").exists(false));
+        query.fields().include("tripSchedule").include("passenger");
+        long updated = 0;
+        List<Document> batch = new ArrayList<>(batchSize);
+        try (CloseableIterator<Document> tickets = mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(Ticket.class))) {
+            while (tickets.hasNext()) {
+                batch.add(tickets.next());
+                if (batch.size() == batchSize) {
+                    updated += migrateTickets(batch, trips);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            updated += migrateTickets(batch, trips);
+        }
+        return updated;
+    }
+
+    private int migrateTickets(List<Document> tickets, Map<String, TripSnapshot> trips) {
+        Map<Object, String> tripIdsBySchedule = new HashMap<>();
+        Query schedules = new Query(Criteria.where("_id").in(refIds(tickets, "tripSchedule")));
+        schedules.fields().include("tripDetail");
+        for (Document schedule : mongoTemplate.find(schedules, Document.class, mongoTemplate.getCollectionName(TripSchedule.class))) {
+            tripIdsBySchedule.put(schedule.get("_id"), ((DBRef) schedule.get("tripDetail")).getId().toString());
+        }
+        Map<Object, PassengerSnapshot> passengers = new HashMap<>();
+        Query users = new Query(Criteria.where("_id").in(refIds(tickets, "passenger")));
+        users.fields().include("email").include("firstName").include("lastName").include("mobileNumber");
+        for (Document user : mongoTemplate.find(users, Document.class, mongoTemplate.getCollectionName(User.class))) {
+            passengers.put(user.get("_id"), PassengerSnapshot.of(new User()
+                    .setEmail(user.getString("email"))
+                    .setFirstName(user.getString("firstName"))
+                    .setLastName(user.getString("lastName"))
+                    .setMobileNumber(user.getString("mobileNumber"))));
+        }
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Ticket.class);
+        int updated = 0;
+        for (Document ticket : tickets) {
+            TripSnapshot trip = trips.get(tripIdsBySchedule.get(refId(ticket, "tripSchedule")));
+            PassengerSnapshot passenger = passengers.get(refId(ticket, "passenger"));
+            if (trip == null || passenger == null) {
+                //dangling reference, the ticket keeps reading through it
+                continue;
+            }
+            bulkOperations.updateOne(new Query(Criteria.where("_id").is(ticket.get("_id"))),
+                    new Update().set("tripSnapshot", trip).set("passengerSnapshot", passenger));
+            updated++;
+        }
+        if (updated > 0) {
+            bulkOperations.execute();
+        }
+        return updated;
+    }
+
+    private DBRef tripRef(String tripId) {
+        return mongoTemplate.getConverter().toDBRef(new Trip().setId(tripId), null);
+    }
+
+    private static List<Object> refIds(List<Document> documents, String field) {
+        return documents.stream()
+                .map(document -> refId(document, field))
+                .filter(id -> id != null)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private static Object refId(Document document, String field) {
+        DBRef ref = (DBRef) document.get(field);
+        return ref != null ? ref.getId() : null;
+    }
+}
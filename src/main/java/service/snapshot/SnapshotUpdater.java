@@ -0,0 +1,162 @@
+package service.snapshot;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import dto.model.cab.TripDto;
+import model.cab.Agency;
+import model.cab.Cab;
+import model.cab.PassengerSnapshot;
+import model.cab.Stop;
+import model.cab.Ticket;
+import model.cab.Trip;
+import model.cab.TripSchedule;
+import model.user.User;
+import service.search.SearchCache;
+import service.search.TripSearchIndex;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Keeps the snapshots embedded in trips, schedules and tickets in line with the stops, cabs,
+ * agencies and users they were copied from. Runs after every save of one of those, finds the
+ * trips referencing the saved document whose copied fields differ from it and rewrites those
+ * fields on the schedules and tickets of those trips, then on the trips themselves, with one
+ * multi update per collection. Only documents holding a stale copy are matched, so a save that
+ * changes none of the copied fields writes nothing. The trips are updated last, so a run that is
+ * interrupted leaves them stale and the next save finishes it. Documents without a snapshot are
+ * left alone, they still read through their references, but their trips are indexed again and
+ * their cached searches evicted like the updated ones.
+ */
+@Component
+public class SnapshotUpdater extends AbstractMongoEventListener<Object> {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TripSearchIndex tripSearchIndex;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        Object source = event.getSource();
+        if (source instanceof Stop) {
+            stopChanged((Stop) source);
+        } else if (source instanceof Cab) {
+            cabChanged((Cab) source);
+        } else if (source instanceof Agency) {
+            agencyChanged((Agency) source);
+        } else if (source instanceof User) {
+            userChanged((User) source);
+        }
+    }
+
+    public void stopChanged(Stop stop) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("sourceStopCode", stop.getCode());
+        source.put("sourceStopName", stop.getName());
+        updateTrips("sourceStop", ref(stop), source);
+        Map<String, Object> destination = new LinkedHashMap<>();
+        destination.put("destStopCode", stop.getCode());
+        destination.put("destStopName", stop.getName());
+        updateTrips("destStop", ref(stop), destination);
+    }
+
+    public void cabChanged(Cab cab) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("cabCode", cab.getCode());
+        fields.put("cabCapacity", cab.getCapacity());
+        updateTrips("cab", ref(cab), fields);
+    }
+
+    public void agencyChanged(Agency agency) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("agencyCode", agency.getCode());
+        updateTrips("agency", ref(agency), fields);
+    }
+
+    public void userChanged(User user) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("email", user.getEmail());
+        fields.put("fullName", user.getFullName());
+        fields.put("mobileNumber", user.getMobileNumber());
+        mongoTemplate.updateMulti(new Query(Criteria.where("passenger").is(ref(user))
+                        .and("passengerSnapshot").exists(true)
+                        .orOperator(stale("passengerSnapshot.", fields).toArray(Criteria[]::new))),
+                Update.update("passengerSnapshot", PassengerSnapshot.of(user)), Ticket.class);
+    }
+
+    /**
+     * Sets the given snapshot fields on the schedules and tickets of the trips whose reference
+     * property points to the changed document, then on those trips, and indexes those trips again.
+     * Trips whose snapshot already holds the given values are skipped.
+     *
+     * @param property
+     * @param changed
+     * @param fields
+     */
+    private void updateTrips(String property, DBRef changed, Map<String, Object> fields) {
+        Query query = new Query(Criteria.where(property).is(changed)
+                .orOperator(Stream.concat(Stream.of(Criteria.where("snapshot").exists(false)), stale("snapshot.", fields))
+                        .toArray(Criteria[]::new)));
+        query.fields().include("_id");
+        List<String> tripIds = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Trip.class))
+                .stream()
+                .map(trip -> trip.get("_id").toString())
+                .collect(Collectors.toList());
+        if (tripIds.isEmpty()) {
+            return;
+        }
+        Query snapshotsOfTrips = new Query(Criteria.where("tripSnapshot.tripId").in(tripIds)
+                .orOperator(stale("tripSnapshot.", fields).toArray(Criteria[]::new)));
+        mongoTemplate.updateMulti(snapshotsOfTrips, update("tripSnapshot.", fields), TripSchedule.class);
+        mongoTemplate.updateMulti(snapshotsOfTrips, update("tripSnapshot.", fields), Ticket.class);
+        mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(tripIds).and("snapshot").exists(true)),
+                update("snapshot.", fields), Trip.class);
+        List<TripDto> previous = tripIds.stream()
+                .map(tripSearchIndex::getTrip)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        List<TripDto> refreshed = tripSearchIndex.refresh(tripIds);
+        Stream.concat(previous.stream(), refreshed.stream())
+                .forEach(tripDto -> searchCache.evictRoute(tripDto.getSourceStopCode(), tripDto.getDestinationStopCode()));
+    }
+
+    private DBRef ref(Object entity) {
+        return mongoTemplate.getConverter().toDBRef(entity, null);
+    }
+
+    /**
+     * Returns one criteria per field matching a snapshot whose copy of that field differs
+     *
+     * @param prefix
+     * @param fields
+     * @return
+     */
+    private static Stream<Criteria> stale(String prefix, Map<String, Object> fields) {
+        return fields.entrySet().stream()
+                .map(field -> Criteria.where(prefix + field.getKey()).ne(field.getValue()));
+    }
+
+    private static Update update(String prefix, Map<String, Object> fields) {
+        Update update = new Update();
+        fields.forEach((field, value) -> update.set(prefix + field, value));
+        return update;
+    }
+}
@@ -0,0 +1,31 @@
+package service.ticket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import repository.cab.TicketRepository;
+import util.DateCodec;
+
+
+/**
+ * Background cleanup of tickets whose journey is over: they are marked expired and stop being
+ * cancellable, cancelled ones included, in a single multi-document write instead of a save per
+ * ticket. Tickets are kept as booking history.
+ */
+@Slf4j
+@Component
+public class TicketCleanupJob {
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Scheduled(fixedDelayString = "${brs.ticket.cleanup-interval-ms:3600000}")
+    public void cleanup() {
+        int today = DateCodec.today();
+        long expired = ticketRepository.expireTicketsBefore(today);
+        if (expired > 0) {
+            log.info("Ticket cleanup expired {} tickets", expired);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package service.waitlist;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import model.cab.Ticket;
+import model.cab.WaitlistEntry;
+import model.user.User;
+import repository.cab.TripScheduleRepository;
+import repository.cab.WaitlistRepository;
+import repository.user.UserRepository;
+import service.inventory.SeatInventory;
+import service.inventory.SeatReservation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+
+/**
+ * Per trip schedule FIFO waitlist. Entries are kept in the waitlist collection ordered by a
+ * position handed out by the schedule, so promoting n released seats reads and removes the
+ * first n entries off the (tripScheduleId, position) index and never scans the rest of the line.
+ */
+@Slf4j
+@Component
+public class Waitlist {
+    @Autowired
+    private SeatInventory seatInventory;
+
+    @Autowired
+    private WaitlistRepository waitlistRepository;
+
+    @Autowired
+    private TripScheduleRepository tripScheduleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    /**
+     * Puts the passenger at the end of the schedule's waitlist
+     *
+     * @param tripScheduleId
+     * @param passenger
+     * @return the entry, or null if the schedule does not exist
+     */
+    public WaitlistEntry join(String tripScheduleId, User passenger) {
+        long position = tripScheduleRepository.nextWaitlistPosition(tripScheduleId);
+        if (position < 0) {
+            return null;
+        }
+        return waitlistRepository.insert(new WaitlistEntry()
+                .setTripScheduleId(tripScheduleId)
+                .setPassengerId(passenger.getId())
+                .setPosition(position));
+    }
+
+    /**
+     * Returns the number of passengers waiting in front of the entry
+     *
+     * @param entry
+     * @return
+     */
+    public long ahead(WaitlistEntry entry) {
+        return waitlistRepository.countByTripScheduleIdAndPositionLessThan(entry.getTripScheduleId(), entry.getPosition());
+    }
+
+    /**
+     * Hands released seats of the schedule to the head of its waitlist. The seats are reserved in
+     * one go, then one entry is taken off the line per seat and all tickets are saved with one bulk
+     * write. Seats nobody is waiting for go back to the inventory.
+     *
+     * @param tripScheduleId
+     * @param releasedSeats
+     * @return the tickets issued to promoted passengers
+     */
+    public List<Ticket> promote(String tripScheduleId, int releasedSeats) {
+        if (releasedSeats <= 0 || !waitlistRepository.existsByTripScheduleId(tripScheduleId)) {
+            return Collections.emptyList();
+        }
+        SeatReservation reservation = null;
+        //bookings may have taken some of the released seats in the meantime
+        for (int seats = releasedSeats; seats > 0 && reservation == null; seats--) {
+            reservation = seatInventory.reserveSeats(tripScheduleId, seats);
+        }
+        if (reservation == null) {
+            return Collections.emptyList();
+        }
+        List<WaitlistEntry> entries = new ArrayList<>(reservation.getSeatNumbers().length);
+        WaitlistEntry entry;
+        while (entries.size() < reservation.getSeatNumbers().length
+                && (entry = waitlistRepository.pollFirst(tripScheduleId)) != null) {
+            entries.add(entry);
+        }
+        Map<String, User> usersById = userRepository.findAllById(entries.stream()
+                .map(WaitlistEntry::getPassengerId)
+                .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<User> passengers = entries.stream()
+                .map(waiting -> usersById.get(waiting.getPassengerId()))
+                .filter(passenger -> passenger != null)
+                .collect(Collectors.toList());
+        SeatReservation unused = reservation.slice(passengers.size(), reservation.getSeatNumbers().length);
+        if (unused.getSeatNumbers().length > 0) {
+            seatInventory.releaseSeats(tripScheduleId, unused.getSeatNumbers());
+        }
+        if (passengers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        SeatReservation promoted = reservation.slice(0, passengers.size());
+        List<Ticket> tickets = promoted.toTickets(passengers, null);
+        try {
+            seatInventory.saveTickets(tickets);
+        } catch (RuntimeException ex) {
+            //put the passengers back in line at their old positions
+            seatInventory.releaseSeats(tripScheduleId, promoted.getSeatNumbers());
+            waitlistRepository.saveAll(entries);
+            throw ex;
+        }
+        log.info("Promoted {} passengers from the waitlist of trip schedule {}", tickets.size(), tripScheduleId);
+        return tickets;
+    }
+}
@@ -0,0 +1,65 @@
+package util;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+
+/**
+ * Converts between yyyy-MM-dd dates and epoch days, the number of days since 1970-01-01, which
+ * is how trip and journey dates are stored. Stateless, so safe to share between threads.
+ */
+public class DateCodec {
+
+    //strict, so days that do not exist such as 2023-02-29 are rejected instead of adjusted
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    /**
+     * Returns the epoch day of a yyyy-MM-dd date
+     *
+     * @param date
+     * @return
+     * @throws IllegalArgumentException if the text is not a valid yyyy-MM-dd date
+     */
+    public static int parse(CharSequence date) {
+        if (date == null || date.length() != 10) {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + date);
+        }
+        try {
+            return (int) LocalDate.parse(date, FORMATTER).toEpochDay();
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + date, ex);
+        }
+    }
+
+    /**
+     * Returns the yyyy-MM-dd date of an epoch day, for years 0 to 9999
+     *
+     * @param epochDay
+     * @return
+     */
+    public static String format(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).format(FORMATTER);
+    }
+
+    /**
+     * Returns the epoch day of today in the default time zone
+     *
+     * @return
+     */
+    public static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Returns the epoch day of the given instant in the default time zone
+     *
+     * @param date
+     * @return
+     */
+    public static int of(Date date) {
+        return (int) date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+}
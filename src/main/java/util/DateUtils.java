@@ -1,13 +1,12 @@
 package util;
 
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 
 public class DateUtils {
 
-    private static SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-
     /**
      * Returns today's date as java.util.Date object
      *
@@ -23,7 +22,7 @@ public class DateUtils {
      * @return today's date as yyyy-MM-dd format
      */
     public static String todayStr() {
-        return sdf.format(today());
+        return DateCodec.format(DateCodec.today());
     }
 
     /**
@@ -33,7 +32,23 @@ public class DateUtils {
      * @return
      */
     public static String formattedDate(Date date) {
-        return date != null ? sdf.format(date) : todayStr();
+        return date != null ? DateCodec.format(DateCodec.of(date)) : todayStr();
+    }
+
+    /**
+     * Returns every day from fromDate to toDate, both inclusive, in yyyy-MM-dd format
+     *
+     * @param fromDate yyyy-MM-dd
+     * @param toDate   yyyy-MM-dd
+     * @return
+     */
+    public static List<String> datesBetween(String fromDate, String toDate) {
+        List<String> dates = new ArrayList<>();
+        int to = DateCodec.parse(toDate);
+        for (int day = DateCodec.parse(fromDate); day <= to; day++) {
+            dates.add(DateCodec.format(day));
+        }
+        return dates;
     }
 
 }
@@ -0,0 +1,118 @@
+package util;
+
+import java.util.PriorityQueue;
+
+
+/**
+ * Static 3-d tree over points given as x, y, z arrays. The tree is implicit: the points are
+ * permuted so that the median of every range, split on x, y and z in turn, sits in the middle
+ * of the range, no node objects are allocated. Queries return indexes into the original arrays.
+ */
+public class KdTree {
+
+    private final double[][] coordinates;
+
+    private final int[] points;
+
+    public KdTree(double[] xs, double[] ys, double[] zs) {
+        this.coordinates = new double[][]{xs, ys, zs};
+        this.points = new int[xs.length];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i;
+        }
+        build(0, points.length, 0);
+    }
+
+    /**
+     * Returns the indexes of the k points closest to the given point, closest first
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param k
+     * @return
+     */
+    public int[] nearest(double x, double y, double z, int k) {
+        int size = Math.min(k, points.length);
+        //max-heap on distance of the best candidates so far
+        PriorityQueue<double[]> heap = new PriorityQueue<>(size + 1, (a, b) -> Double.compare(b[0], a[0]));
+        search(0, points.length, 0, new double[]{x, y, z}, size, heap);
+        int[] nearest = new int[heap.size()];
+        for (int i = nearest.length - 1; i >= 0; i--) {
+            nearest[i] = (int) heap.poll()[1];
+        }
+        return nearest;
+    }
+
+    private void build(int from, int to, int axis) {
+        if (to - from <= 1) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, coordinates[axis]);
+        build(from, mid, (axis + 1) % 3);
+        build(mid + 1, to, (axis + 1) % 3);
+    }
+
+    /**
+     * Quickselect, afterwards points[nth] holds the point of rank nth on the axis
+     */
+    private void select(int left, int right, int nth, double[] axis) {
+        while (right > left) {
+            double pivot = axis[points[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axis[points[i]] < pivot) {
+                    i++;
+                }
+                while (axis[points[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = points[i];
+                    points[i++] = points[j];
+                    points[j--] = swap;
+                }
+            }
+            if (nth <= j) {
+                right = j;
+            } else if (nth >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void search(int from, int to, int axis, double[] target, int k, PriorityQueue<double[]> heap) {
+        if (from >= to || k == 0) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        int point = points[mid];
+        double dx = coordinates[0][point] - target[0];
+        double dy = coordinates[1][point] - target[1];
+        double dz = coordinates[2][point] - target[2];
+        double distance = dx * dx + dy * dy + dz * dz;
+        if (heap.size() < k) {
+            heap.add(new double[]{distance, point});
+        } else if (distance < heap.peek()[0]) {
+            heap.poll();
+            heap.add(new double[]{distance, point});
+        }
+        double delta = target[axis] - coordinates[axis][point];
+        int next = (axis + 1) % 3;
+        if (delta < 0) {
+            search(from, mid, next, target, k, heap);
+            if (heap.size() < k || delta * delta < heap.peek()[0]) {
+                search(mid + 1, to, next, target, k, heap);
+            }
+        } else {
+            search(mid + 1, to, next, target, k, heap);
+            if (heap.size() < k || delta * delta < heap.peek()[0]) {
+                search(from, mid, next, target, k, heap);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package util;
+
+import java.util.Collection;
+
+
+/**
+ * Helpers for the seat occupancy bitmap of a trip schedule. Seat n is bit n % 64 of word n / 64,
+ * a set bit means the seat is taken, so a 64 seat cab costs a single long.
+ */
+public class SeatBitmap {
+
+    public static final int WORD_SIZE = Long.SIZE;
+
+    /**
+     * Returns the number of words needed for the given capacity
+     *
+     * @param capacity
+     * @return
+     */
+    public static int words(int capacity) {
+        return (capacity + WORD_SIZE - 1) / WORD_SIZE;
+    }
+
+    /**
+     * Returns an empty bitmap for the given capacity
+     *
+     * @param capacity
+     * @return
+     */
+    public static long[] create(int capacity) {
+        return new long[words(capacity)];
+    }
+
+    /**
+     * Returns a bitmap with the given seats taken
+     *
+     * @param capacity
+     * @param seatNumbers
+     * @return
+     */
+    public static long[] of(int capacity, Collection<Integer> seatNumbers) {
+        long[] seatMap = create(capacity);
+        for (int seatNumber : seatNumbers) {
+            if (seatNumber >= 0 && seatNumber < capacity) {
+                seatMap[seatNumber / WORD_SIZE] |= mask(seatNumber);
+            }
+        }
+        return seatMap;
+    }
+
+    /**
+     * Returns a bitmap with the first taken seats set, which is how seats were numbered
+     * before schedules carried a bitmap
+     *
+     * @param capacity
+     * @param taken
+     * @return
+     */
+    public static long[] firstTaken(int capacity, int taken) {
+        long[] seatMap = create(capacity);
+        for (int seatNumber = 0; seatNumber < taken && seatNumber < capacity; seatNumber++) {
+            seatMap[seatNumber / WORD_SIZE] |= mask(seatNumber);
+        }
+        return seatMap;
+    }
+
+    /**
+     * Returns the bit of the seat inside its word
+     *
+     * @param seatNumber
+     * @return
+     */
+    public static long mask(int seatNumber) {
+        return 1L << (seatNumber % WORD_SIZE);
+    }
+
+    /**
+     * Returns the mask of the seats of a word that exist for the given capacity
+     *
+     * @param capacity
+     * @param word
+     * @return
+     */
+    public static long validMask(int capacity, int word) {
+        int seatsInWord = Math.min(WORD_SIZE, capacity - word * WORD_SIZE);
+        return seatsInWord == WORD_SIZE ? -1L : (1L << seatsInWord) - 1;
+    }
+
+    /**
+     * Returns true if the seat exists and is not taken
+     *
+     * @param seatMap
+     * @param capacity
+     * @param seatNumber
+     * @return
+     */
+    public static boolean isFree(long[] seatMap, int capacity, int seatNumber) {
+        return seatNumber >= 0 && seatNumber < capacity
+                && (seatMap[seatNumber / WORD_SIZE] & mask(seatNumber)) == 0;
+    }
+
+    /**
+     * Returns the lowest free seats of the bitmap, skipping full words a whole word at a time
+     *
+     * @param seatMap
+     * @param capacity
+     * @param count
+     * @return the seat numbers, or null if fewer than count seats are free
+     */
+    public static int[] findFree(long[] seatMap, int capacity, int count) {
+        int[] seatNumbers = new int[count];
+        int found = 0;
+        for (int word = 0; word < seatMap.length && found < count; word++) {
+            long free = ~seatMap[word] & validMask(capacity, word);
+            while (free != 0 && found < count) {
+                int bit = Long.numberOfTrailingZeros(free);
+                seatNumbers[found++] = word * WORD_SIZE + bit;
+                free &= free - 1;
+            }
+        }
+        return found == count ? seatNumbers : null;
+    }
+
+}
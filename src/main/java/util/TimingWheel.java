@@ -0,0 +1,208 @@
+package util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+
+/**
+ * Hashed timing wheel for large numbers of short lived timeouts. Scheduling and cancelling are
+ * O(1) and lock-free, a single worker thread advances the wheel one bucket per tick and hands
+ * the expired items to the expiry handler. Timeouts fire up to one tick late.
+ *
+ * @param <T> the type of the items scheduled on the wheel
+ */
+@Slf4j
+public class TimingWheel<T> {
+
+    private final long tickNanos;
+
+    private final Bucket<T>[] wheel;
+
+    private final int mask;
+
+    private final Consumer<T> expiryHandler;
+
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+
+    private final Thread worker;
+
+    private volatile long startTime;
+
+    private volatile boolean running;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickMillis, int ticksPerWheel, Consumer<T> expiryHandler) {
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 1) * 2 - 1);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket<>();
+        }
+        this.mask = size - 1;
+        this.expiryHandler = expiryHandler;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        startTime = System.nanoTime();
+        running = true;
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Schedules the item to expire after the given delay
+     *
+     * @param item
+     * @param delayMillis
+     * @return the handle to cancel the timeout with
+     */
+    public Timeout<T> schedule(T item, long delayMillis) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        Timeout<T> timeout = new Timeout<>(item, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException ex) {
+                    continue;
+                }
+            }
+            transferPending(tick);
+            wheel[(int) (tick & mask)].expire(expiryHandler);
+            tick++;
+        }
+    }
+
+    private void transferPending(long tick) {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            long expiryTick = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+            wheel[(int) (expiryTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Handle of an item scheduled on the wheel
+     *
+     * @param <T>
+     */
+    public static final class Timeout<T> {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final T item;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private long remainingRounds;
+
+        private Timeout<T> next;
+
+        private Timeout<T> prev;
+
+        private Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Cancels the timeout, the entry is unlinked lazily when the wheel next passes its bucket
+         *
+         * @return false if the timeout already expired or was cancelled
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        private boolean expire() {
+            return state.compareAndSet(PENDING, EXPIRED);
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, only touched by the worker thread
+     */
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(Consumer<T> expiryHandler) {
+            Timeout<T> timeout = head;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.state.get() != Timeout.PENDING) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.expire()) {
+                        try {
+                            expiryHandler.accept(timeout.item);
+                        } catch (RuntimeException ex) {
+                            //a failing handler must not stop the wheel
+                            log.warn("Expiry handler failed for {}", timeout.item, ex);
+                        }
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+        }
+    }
+}
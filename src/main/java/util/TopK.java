@@ -0,0 +1,43 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+/**
+ * Selects the k smallest items of a collection with a bounded heap, O(n log k) time and O(k) memory.
+ */
+public class TopK {
+
+    /**
+     * Returns the k smallest items according to the comparator, in order
+     *
+     * @param items
+     * @param comparator
+     * @param k
+     * @param <T>
+     * @return
+     */
+    public static <T> List<T> select(Iterable<T> items, Comparator<T> comparator, int k) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        //max-heap of the best k so far, its head is the worst of them
+        PriorityQueue<T> heap = new PriorityQueue<>(Collections.reverseOrder(comparator));
+        for (T item : items) {
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (comparator.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+        List<T> selected = new ArrayList<>(heap);
+        selected.sort(comparator);
+        return selected;
+    }
+
+}
@@ -0,0 +1,73 @@
+package config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import model.cab.TripSchedule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MongoIndexInitializerTest {
+    private MongoIndexInitializer mongoIndexInitializer;
+
+    @BeforeEach
+    void setUp() {
+        mongoIndexInitializer = new MongoIndexInitializer();
+        ReflectionTestUtils.setField(mongoIndexInitializer, "mappingContext", new MongoMappingContext());
+    }
+
+    @Test
+    void listsEveryDocument() {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Document.class));
+        Set<String> documents = scanner.findCandidateComponents("model")
+                .stream()
+                .map(BeanDefinition::getBeanClassName)
+                .collect(Collectors.toSet());
+
+        assertEquals(documents, MongoIndexInitializer.DOCUMENTS.stream()
+                .map(Class::getName)
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void reportsMissingIndex() {
+        IndexOperations indexOperations = indexes("_id_", "trip_snapshot");
+
+        assertEquals(Collections.singletonList("trip_date"),
+                mongoIndexInitializer.ensureIndexes(TripSchedule.class, indexOperations));
+    }
+
+    @Test
+    void acceptsCompleteIndexSet() {
+        IndexOperations indexOperations = indexes("_id_", "trip_date", "trip_snapshot");
+
+        assertTrue(mongoIndexInitializer.ensureIndexes(TripSchedule.class, indexOperations).isEmpty());
+    }
+
+    private static IndexOperations indexes(String... names) {
+        List<IndexInfo> indexInfo = Arrays.stream(names)
+                .map(name -> new IndexInfo(Collections.emptyList(), name, false, false, null))
+                .collect(Collectors.toList());
+        IndexOperations indexOperations = mock(IndexOperations.class);
+        when(indexOperations.getIndexInfo()).thenReturn(indexInfo);
+        return indexOperations;
+    }
+}
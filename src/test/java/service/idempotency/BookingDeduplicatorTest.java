@@ -0,0 +1,112 @@
+package service.idempotency;
+
+import dto.model.cab.TicketDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookingDeduplicatorTest {
+    private BookingDeduplicator deduplicator;
+
+    private final AtomicInteger bookings = new AtomicInteger();
+
+    @BeforeEach
+    void start() {
+        deduplicator = new BookingDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(deduplicator, "maxEntries", 2);
+        deduplicator.start();
+    }
+
+    @AfterEach
+    void stop() {
+        deduplicator.stop();
+    }
+
+    @Test
+    void booksOncePerKey() {
+        TicketDto first = deduplicator.bookOnce("a@b.c:1", this::book);
+        TicketDto retry = deduplicator.bookOnce("a@b.c:1", this::book);
+
+        assertSame(first, retry);
+        assertEquals(1, bookings.get());
+    }
+
+    @Test
+    void retryWaitsForBookingInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<TicketDto> first = executor.submit(() -> deduplicator.bookOnce("a@b.c:1", () -> {
+                started.countDown();
+                await(proceed);
+                return book();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<TicketDto> retry = executor.submit(() -> deduplicator.bookOnce("a@b.c:1", this::book));
+            proceed.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+            assertEquals(1, bookings.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedBookingIsNotRemembered() {
+        assertThrows(IllegalStateException.class, () -> deduplicator.bookOnce("a@b.c:1", () -> {
+            throw new IllegalStateException("sold out");
+        }));
+
+        deduplicator.bookOnce("a@b.c:1", this::book);
+        assertEquals(1, bookings.get());
+    }
+
+    @Test
+    void forgottenKeyIsBookedAgain() {
+        TicketDto first = deduplicator.bookOnce("a@b.c:1", this::book);
+        deduplicator.forget("a@b.c:1");
+
+        assertNotSame(first, deduplicator.bookOnce("a@b.c:1", this::book));
+        assertEquals(2, bookings.get());
+    }
+
+    @Test
+    void fullStoreBooksWithoutRemembering() {
+        deduplicator.bookOnce("a@b.c:1", this::book);
+        deduplicator.bookOnce("a@b.c:2", this::book);
+        deduplicator.bookOnce("a@b.c:3", this::book);
+        deduplicator.bookOnce("a@b.c:3", this::book);
+
+        assertEquals(4, bookings.get());
+    }
+
+    private TicketDto book() {
+        bookings.incrementAndGet();
+        return new TicketDto();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
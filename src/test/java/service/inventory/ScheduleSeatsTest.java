@@ -0,0 +1,157 @@
+package service.inventory;
+
+import model.cab.TripSchedule;
+import model.cab.TripSnapshot;
+import org.junit.jupiter.api.Test;
+import service.inventory.WriteBehindSeatInventory.ScheduleSeats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduleSeatsTest {
+    private static final int THREADS = 8;
+
+    @Test
+    void reservesLowestFreeSeats() {
+        ScheduleSeats seats = seats(100, 98, new long[]{0b101L, 0L});
+
+        assertArrayEquals(new int[]{1, 3, 4}, seats.reserve(3));
+        assertEquals(95, seats.available());
+    }
+
+    @Test
+    void reservesAllOrNothing() {
+        ScheduleSeats seats = seats(4, 2, null);
+
+        assertNull(seats.reserve(3));
+        assertEquals(2, seats.available());
+        assertArrayEquals(new int[]{2, 3}, seats.reserve(2));
+        assertNull(seats.reserve(1));
+    }
+
+    @Test
+    void claimRollsBackWhenASeatIsTaken() {
+        ScheduleSeats seats = seats(10, 10, null);
+
+        assertTrue(seats.claim(new int[]{5}));
+        assertFalse(seats.claim(new int[]{4, 5}));
+        assertFalse(seats.claim(new int[]{10}));
+
+        assertEquals(9, seats.available());
+        assertArrayEquals(new long[]{0b100000L}, seats.seatMap());
+    }
+
+    @Test
+    void releasesOnlyTakenSeats() {
+        ScheduleSeats seats = seats(10, 10, null);
+        int[] seatNumbers = seats.reserve(2);
+
+        assertTrue(seats.release(seatNumbers));
+        assertFalse(seats.release(seatNumbers));
+        assertFalse(seats.release(new int[]{-1}));
+
+        assertEquals(10, seats.available());
+        assertArrayEquals(new long[]{0L}, seats.seatMap());
+    }
+
+    @Test
+    void concurrentTakeAndFreeKeepCounterInStepWithBitmap() throws Exception {
+        ScheduleSeats seats = seats(130, 130, null);
+        AtomicInteger reserved = new AtomicInteger();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < 20000; i++) {
+                int[] seatNumbers = seats.reserve(1 + i % 3);
+                if (seatNumbers != null) {
+                    reserved.incrementAndGet();
+                    assertTrue(seats.release(seatNumbers));
+                }
+            }
+            return null;
+        });
+
+        assertTrue(reserved.get() > 0);
+        assertEquals(130, seats.available());
+        assertArrayEquals(new long[]{0L, 0L, 0L}, seats.seatMap());
+    }
+
+    @Test
+    void concurrentReservationsNeverShareASeat() throws Exception {
+        ScheduleSeats seats = seats(100, 100, null);
+        List<int[]> taken = new ArrayList<>();
+
+        for (Future<Object> result : runConcurrently(() -> {
+            List<int[]> own = new ArrayList<>();
+            int[] seatNumbers;
+            while ((seatNumbers = seats.reserve(1)) != null) {
+                own.add(seatNumbers);
+            }
+            return own;
+        })) {
+            for (Object seatNumbers : (List<?>) result.get()) {
+                taken.add((int[]) seatNumbers);
+            }
+        }
+
+        assertEquals(100, taken.size());
+        assertEquals(100, taken.stream().mapToInt(seatNumbers -> seatNumbers[0]).distinct().count());
+        assertEquals(0, seats.available());
+    }
+
+    @Test
+    void concurrentDoubleReleaseGivesSeatBackOnce() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            ScheduleSeats seats = seats(64, 64, null);
+            int[] seatNumbers = seats.reserve(10);
+            AtomicInteger released = new AtomicInteger();
+
+            runConcurrently(() -> {
+                if (seats.release(seatNumbers)) {
+                    released.incrementAndGet();
+                }
+                return null;
+            });
+
+            assertEquals(64, seats.available());
+            assertTrue(released.get() <= 1);
+            //a reservation of every seat must terminate instead of spinning on a phantom seat
+            assertEquals(64, seats.reserve(64).length);
+        }
+    }
+
+    private static ScheduleSeats seats(int capacity, int available, long[] seatMap) {
+        return new ScheduleSeats(new TripSchedule()
+                .setTripSnapshot(new TripSnapshot().setCabCapacity(capacity))
+                .setAvailableSeats(available)
+                .setSeatMap(seatMap));
+    }
+
+    private static List<Future<Object>> runConcurrently(Callable<Object> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                tasks.add(task);
+            }
+            List<Future<Object>> results = executor.invokeAll(tasks, 30, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                result.get();
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package service.inventory;
+
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TicketJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsClosedSegmentsInOrder() throws IOException {
+        try (TicketJournal journal = new TicketJournal(directory)) {
+            journal.append(Arrays.asList(ticket("a"), ticket("b")));
+            journal.roll();
+            journal.append(Collections.singletonList(ticket("c")));
+            journal.roll();
+            journal.append(Collections.singletonList(ticket("d")));
+
+            assertEquals(Arrays.asList("a", "b", "c"), ids(journal.readClosed()));
+        }
+    }
+
+    @Test
+    void survivesRestart() throws IOException {
+        try (TicketJournal journal = new TicketJournal(directory)) {
+            journal.append(Arrays.asList(ticket("a"), ticket("b")));
+        }
+        try (TicketJournal journal = new TicketJournal(directory)) {
+            journal.append(Collections.singletonList(ticket("c")));
+
+            assertEquals(Arrays.asList("a", "b"), ids(journal.readClosed()));
+        }
+    }
+
+    @Test
+    void skipsTornRecord() throws IOException {
+        try (TicketJournal journal = new TicketJournal(directory)) {
+            journal.append(Collections.singletonList(ticket("a")));
+        }
+        byte[] torn = Arrays.copyOf(bytes(ticket("b")), 9);
+        Files.write(directory.resolve("tickets-1.journal"), torn, StandardOpenOption.APPEND);
+
+        try (TicketJournal journal = new TicketJournal(directory)) {
+            assertEquals(Collections.singletonList("a"), ids(journal.readClosed()));
+        }
+    }
+
+    @Test
+    void deletesSegmentsBeforeRoll() throws IOException {
+        try (TicketJournal journal = new TicketJournal(directory)) {
+            journal.append(Collections.singletonList(ticket("a")));
+            long segment = journal.roll();
+            journal.append(Collections.singletonList(ticket("b")));
+            journal.deleteBefore(segment);
+            journal.roll();
+
+            assertEquals(Collections.singletonList("b"), ids(journal.readClosed()));
+            assertTrue(Files.notExists(directory.resolve("tickets-1.journal")));
+        }
+    }
+
+    private static RawBsonDocument ticket(String id) {
+        return RawBsonDocument.parse("{\"_id\": \"" + id + "\", \"seatNumber\": 3}");
+    }
+
+    private static byte[] bytes(RawBsonDocument document) {
+        ByteBuffer buffer = document.getByteBuffer().asNIO();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static List<String> ids(List<RawBsonDocument> documents) {
+        return documents.stream().map(document -> document.getString("_id").getValue()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,83 @@
+package service.pipeline;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dto.model.cab.BookingStatusDto;
+import dto.model.cab.TicketDto;
+import dto.model.cab.TripScheduleDto;
+import dto.model.user.UserDto;
+import service.CabReservationService;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BookingPipelineTest {
+    private static final String EMAIL = "a@b.c";
+
+    private BookingPipeline bookingPipeline;
+
+    private CabReservationService cabReservationService;
+
+    private final TripScheduleDto tripScheduleDto = new TripScheduleDto().setId("s1");
+
+    private final UserDto userDto = new UserDto().setEmail(EMAIL);
+
+    @BeforeEach
+    void start() {
+        cabReservationService = mock(CabReservationService.class);
+        bookingPipeline = new BookingPipeline();
+        ReflectionTestUtils.setField(bookingPipeline, "cabReservationService", cabReservationService);
+        ReflectionTestUtils.setField(bookingPipeline, "workers", 1);
+        ReflectionTestUtils.setField(bookingPipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(bookingPipeline, "statusTtlSeconds", 60L);
+        ReflectionTestUtils.setField(bookingPipeline, "shutdownTimeoutMillis", 200L);
+        bookingPipeline.start();
+    }
+
+    @Test
+    void finishesQueuedBookingsOnStop() throws InterruptedException {
+        when(cabReservationService.bookTickets(tripScheduleDto, userDto, 1, null))
+                .thenReturn(Collections.singletonList(new TicketDto()));
+
+        BookingStatusDto pending = bookingPipeline.submit(tripScheduleDto, userDto, 1, null);
+        bookingPipeline.stop();
+
+        assertEquals(BookingStatusDto.Status.CONFIRMED, bookingPipeline.status(pending.getReference(), EMAIL).getStatus());
+    }
+
+    @Test
+    void failsBookingsLeftQueuedAfterTimeout() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        when(cabReservationService.bookTickets(tripScheduleDto, userDto, 1, null)).thenAnswer(invocation -> {
+            started.countDown();
+            proceed.await();
+            return Collections.singletonList(new TicketDto());
+        });
+        bookingPipeline.submit(tripScheduleDto, userDto, 1, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        BookingStatusDto queued = bookingPipeline.submit(tripScheduleDto, userDto, 1, null);
+
+        bookingPipeline.stop();
+
+        BookingStatusDto status = bookingPipeline.status(queued.getReference(), EMAIL);
+        assertEquals(BookingStatusDto.Status.FAILED, status.getStatus());
+        assertEquals(queued.getSubmittedAt(), status.getSubmittedAt());
+    }
+
+    @Test
+    void rejectsBookingsAfterStop() throws InterruptedException {
+        bookingPipeline.stop();
+
+        assertNull(bookingPipeline.submit(tripScheduleDto, userDto, 1, null));
+    }
+}
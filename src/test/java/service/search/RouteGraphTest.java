@@ -0,0 +1,100 @@
+package service.search;
+
+import org.junit.jupiter.api.Test;
+
+import dto.model.cab.TripDto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteGraphTest {
+
+    @Test
+    void findsCheapestItineraryPerNumberOfLegs() {
+        RouteGraph graph = new RouteGraph(Arrays.asList(
+                trip("direct", "X", "Z", 300, 100),
+                trip("first", "X", "Y", 60, 40),
+                trip("second", "Y", "Z", 60, 40),
+                trip("slow", "Y", "Z", 500, 10)));
+
+        List<List<String>> itineraries = ids(graph.search("X", "Z", 3, RouteGraph.Criterion.TIME));
+
+        assertEquals(Arrays.asList(
+                Collections.singletonList("direct"),
+                Arrays.asList("first", "second")), itineraries);
+    }
+
+    @Test
+    void ordersByCriterion() {
+        RouteGraph graph = new RouteGraph(Arrays.asList(
+                trip("fast", "X", "Y", 60, 200),
+                trip("cheap", "X", "Y", 240, 50)));
+
+        assertEquals(Collections.singletonList(Collections.singletonList("fast")),
+                ids(graph.search("X", "Y", 1, RouteGraph.Criterion.TIME)));
+        assertEquals(Collections.singletonList(Collections.singletonList("cheap")),
+                ids(graph.search("X", "Y", 1, RouteGraph.Criterion.FARE)));
+    }
+
+    @Test
+    void breaksTiesOnSecondaryCriterion() {
+        RouteGraph graph = new RouteGraph(Arrays.asList(
+                trip("dear", "X", "Y", 60, 200),
+                trip("cheap", "X", "Y", 60, 150)));
+
+        assertEquals(Collections.singletonList(Collections.singletonList("cheap")),
+                ids(graph.search("X", "Y", 1, RouteGraph.Criterion.TIME)));
+    }
+
+    @Test
+    void doesNotVisitStopTwice() {
+        RouteGraph graph = new RouteGraph(Arrays.asList(
+                trip("out", "X", "A", 10, 10),
+                trip("loop", "A", "B", 1, 1),
+                trip("back", "B", "A", 1, 1),
+                trip("in", "A", "Z", 10, 10)));
+
+        assertEquals(Collections.singletonList(Arrays.asList("out", "in")),
+                ids(graph.search("X", "Z", 4, RouteGraph.Criterion.TIME)));
+    }
+
+    @Test
+    void stopsAtMaxLegs() {
+        RouteGraph graph = new RouteGraph(Arrays.asList(
+                trip("first", "X", "A", 10, 10),
+                trip("second", "A", "B", 10, 10),
+                trip("third", "B", "Z", 10, 10)));
+
+        assertTrue(graph.search("X", "Z", 2, RouteGraph.Criterion.TIME).isEmpty());
+        assertEquals(1, graph.search("X", "Z", 3, RouteGraph.Criterion.TIME).size());
+    }
+
+    @Test
+    void findsNothingForUnknownOrSameStops() {
+        RouteGraph graph = new RouteGraph(Collections.singletonList(trip("direct", "X", "Y", 60, 100)));
+
+        assertTrue(graph.search("X", "Q", 3, RouteGraph.Criterion.TIME).isEmpty());
+        assertTrue(graph.search("X", "X", 3, RouteGraph.Criterion.TIME).isEmpty());
+        assertTrue(graph.search("Y", "X", 3, RouteGraph.Criterion.TIME).isEmpty());
+    }
+
+    private static TripDto trip(String id, String sourceStopCode, String destinationStopCode, int journeyTime, int fare) {
+        return new TripDto()
+                .setId(id)
+                .setSourceStopCode(sourceStopCode)
+                .setDestinationStopCode(destinationStopCode)
+                .setJourneyTime(journeyTime)
+                .setFare(fare);
+    }
+
+    private static List<List<String>> ids(List<List<TripDto>> itineraries) {
+        return itineraries.stream()
+                .map(itinerary -> itinerary.stream().map(TripDto::getId).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
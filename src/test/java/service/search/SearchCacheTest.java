@@ -0,0 +1,177 @@
+package service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dto.model.cab.TripScheduleDto;
+import model.cab.Trip;
+import model.cab.TripSnapshot;
+import repository.cab.StopRepository;
+import repository.cab.TripRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SearchCacheTest {
+    private static final String DATE = "2030-01-15";
+
+    private SearchCache searchCache;
+
+    private TripRepository tripRepository;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        tripRepository = mock(TripRepository.class);
+        TripSearchIndex tripSearchIndex = new TripSearchIndex();
+        ReflectionTestUtils.setField(tripSearchIndex, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(tripSearchIndex, "stopRepository", mock(StopRepository.class));
+        searchCache = new SearchCache();
+        ReflectionTestUtils.setField(searchCache, "tripSearchIndex", tripSearchIndex);
+        ReflectionTestUtils.setField(searchCache, "maxEntries", 10);
+        ReflectionTestUtils.setField(searchCache, "ttlMillis", 60000L);
+    }
+
+    @Test
+    void servesCachedResult() {
+        search("X", "Y", DATE);
+        search("X", "Y", DATE);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void evictsScheduleOfTripNotIndexedYet() {
+        when(tripRepository.findById("a")).thenReturn(Optional.of(trip("a", "X", "Y")));
+        search("X", "Y", DATE);
+        search("Y", "Z", DATE);
+
+        searchCache.evictSchedule("a", DATE);
+        search("X", "Y", DATE);
+        search("Y", "Z", DATE);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void keepsEntriesWhenTripDoesNotExist() {
+        search("X", "Y", DATE);
+
+        searchCache.evictSchedule("missing", DATE);
+        search("X", "Y", DATE);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void evictsRouteOnEveryDay() {
+        search("X", "Y", DATE);
+        search("X", "Y", "2030-01-16");
+        search("Y", "X", DATE);
+
+        searchCache.evictRoute("X", "Y");
+        search("X", "Y", DATE);
+        search("X", "Y", "2030-01-16");
+        search("Y", "X", DATE);
+
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void dropsResultLoadedWhileEvicted() {
+        searchCache.get("X", "Y", DATE, () -> {
+            searchCache.evictRoute("X", "Y");
+            return schedules().get();
+        });
+
+        search("X", "Y", DATE);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void reloadsExpiredEntry() {
+        ReflectionTestUtils.setField(searchCache, "ttlMillis", -1L);
+        search("X", "Y", DATE);
+        search("X", "Y", DATE);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void sharesConcurrentLoadOfSameKey() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> searchCache.get("X", "Y", DATE, () -> {
+            started.countDown();
+            await(release);
+            return schedules().get();
+        }));
+        first.start();
+        started.await();
+        AtomicReference<List<TripScheduleDto>> shared = new AtomicReference<>();
+        Thread second = new Thread(() -> shared.set(search("X", "Y", DATE)));
+        second.start();
+        while (second.getState() != Thread.State.WAITING && second.isAlive()) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, shared.get().size());
+    }
+
+    @Test
+    void retriesFailedLoad() {
+        assertThrows(IllegalStateException.class, () -> searchCache.get("X", "Y", DATE, () -> {
+            throw new IllegalStateException();
+        }));
+
+        search("X", "Y", DATE);
+
+        assertEquals(1, loads.get());
+    }
+
+    private List<TripScheduleDto> search(String sourceStopCode, String destinationStopCode, String tripDate) {
+        return searchCache.get(sourceStopCode, destinationStopCode, tripDate, schedules());
+    }
+
+    private Supplier<List<TripScheduleDto>> schedules() {
+        return () -> {
+            loads.incrementAndGet();
+            return Collections.singletonList(new TripScheduleDto());
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Trip trip(String id, String sourceStopCode, String destStopCode) {
+        return new Trip()
+                .setId(id)
+                .setSnapshot(new TripSnapshot()
+                        .setTripId(id)
+                        .setSourceStopCode(sourceStopCode)
+                        .setDestStopCode(destStopCode)
+                        .setCabCapacity(4));
+    }
+}
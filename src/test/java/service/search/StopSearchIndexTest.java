@@ -0,0 +1,80 @@
+package service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dto.model.cab.StopDto;
+import model.cab.Stop;
+import repository.cab.StopRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StopSearchIndexTest {
+    private StopSearchIndex stopSearchIndex;
+
+    private StopRepository stopRepository;
+
+    @BeforeEach
+    void setUp() {
+        stopRepository = mock(StopRepository.class);
+        when(stopRepository.findAll()).thenReturn(Arrays.asList(
+                stop("SAO", "São Paulo", "Terminal Tietê"),
+                stop("SAL", "Salvador", null),
+                stop("PAR", "Paris", "Gare de Bercy")));
+        stopSearchIndex = new StopSearchIndex();
+        ReflectionTestUtils.setField(stopSearchIndex, "stopRepository", stopRepository);
+        stopSearchIndex.rebuild();
+    }
+
+    @Test
+    void matchesPrefixOfCodeOrName() {
+        assertEquals(Arrays.asList("SAL", "SAO"), codes(stopSearchIndex.search("sa", 10)));
+        assertEquals(Collections.singletonList("PAR"), codes(stopSearchIndex.search("PAR", 10)));
+    }
+
+    @Test
+    void matchesWordsWithoutAccents() {
+        assertEquals(Arrays.asList("PAR", "SAO"), codes(stopSearchIndex.search("pa", 10)));
+        assertEquals(Collections.singletonList("SAO"), codes(stopSearchIndex.search("tiete", 10)));
+        assertEquals(Collections.singletonList("PAR"), codes(stopSearchIndex.search("bercy", 10)));
+    }
+
+    @Test
+    void returnsShorterMatchesFirstUpToLimit() {
+        assertEquals(Collections.singletonList("PAR"), codes(stopSearchIndex.search("pa", 1)));
+    }
+
+    @Test
+    void findsNothingForBlankPrefix() {
+        assertTrue(stopSearchIndex.search("  ", 10).isEmpty());
+        assertTrue(stopSearchIndex.search("sa", 0).isEmpty());
+        assertTrue(stopSearchIndex.search("xyz", 10).isEmpty());
+    }
+
+    @Test
+    void rebuildPicksUpNewStops() {
+        when(stopRepository.findAll()).thenReturn(Collections.singletonList(stop("LIS", "Lisboa", null)));
+
+        stopSearchIndex.rebuild();
+
+        assertEquals(Collections.singletonList("LIS"), codes(stopSearchIndex.search("lis", 10)));
+        assertTrue(stopSearchIndex.search("sa", 10).isEmpty());
+    }
+
+    private static Stop stop(String code, String name, String detail) {
+        return new Stop().setCode(code).setName(name).setDetail(detail);
+    }
+
+    private static List<String> codes(List<StopDto> stops) {
+        return stops.stream().map(StopDto::getCode).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,140 @@
+package service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dto.model.cab.TripDto;
+import model.cab.Stop;
+import model.cab.Trip;
+import model.cab.TripSnapshot;
+import repository.cab.StopRepository;
+import repository.cab.TripRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TripSearchIndexTest {
+    private TripSearchIndex tripSearchIndex;
+
+    private TripRepository tripRepository;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository = mock(TripRepository.class);
+        StopRepository stopRepository = mock(StopRepository.class);
+        when(stopRepository.findAll()).thenReturn(Arrays.asList(stop("X"), stop("Y"), stop("Z")));
+        tripSearchIndex = new TripSearchIndex();
+        ReflectionTestUtils.setField(tripSearchIndex, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(tripSearchIndex, "stopRepository", stopRepository);
+    }
+
+    @Test
+    void findsTripsBetweenIndexedStops() {
+        when(tripRepository.findAll()).thenReturn(Collections.singletonList(trip("a", "X", "Y", 4)));
+        tripSearchIndex.rebuild();
+
+        assertEquals(Collections.singletonList("a"), ids(tripSearchIndex.findTrips("X", "Y")));
+        assertTrue(tripSearchIndex.findTrips("X", "Z").isEmpty());
+        assertNull(tripSearchIndex.findTrips("X", "Q"));
+    }
+
+    @Test
+    void movesChangedTripToItsNewStops() {
+        when(tripRepository.findAll()).thenReturn(Collections.singletonList(trip("a", "X", "Y", 4)));
+        tripSearchIndex.rebuild();
+
+        tripSearchIndex.add(trip("a", "X", "Z", 4));
+
+        assertTrue(tripSearchIndex.findTrips("X", "Y").isEmpty());
+        assertEquals(Collections.singletonList("a"), ids(tripSearchIndex.findTrips("X", "Z")));
+    }
+
+    @Test
+    void keepsTripAddedDuringRebuild() {
+        when(tripRepository.findAll()).thenReturn(Collections.emptyList());
+        tripSearchIndex.rebuild();
+        when(tripRepository.findAll()).thenAnswer(invocation -> {
+            tripSearchIndex.add(trip("b", "Y", "Z", 4));
+            return Collections.singletonList(trip("a", "X", "Y", 4));
+        });
+
+        tripSearchIndex.rebuild();
+
+        assertEquals(Collections.singletonList("a"), ids(tripSearchIndex.findTrips("X", "Y")));
+        assertEquals(Collections.singletonList("b"), ids(tripSearchIndex.findTrips("Y", "Z")));
+    }
+
+    @Test
+    void rebuildDoesNotRevertChangeMadeDuringIt() {
+        when(tripRepository.findAll()).thenAnswer(invocation -> {
+            tripSearchIndex.add(trip("a", "X", "Z", 6));
+            return Collections.singletonList(trip("a", "X", "Y", 4));
+        });
+
+        tripSearchIndex.rebuild();
+
+        assertTrue(tripSearchIndex.findTrips("X", "Y").isEmpty());
+        assertEquals(Collections.singletonList("a"), ids(tripSearchIndex.findTrips("X", "Z")));
+        assertEquals(6, (int) tripSearchIndex.getCapacity("a"));
+    }
+
+    @Test
+    void refreshReadsChangedTripsAgain() {
+        when(tripRepository.findAll()).thenReturn(Arrays.asList(trip("a", "X", "Y", 4), trip("b", "Y", "Z", 4)));
+        tripSearchIndex.rebuild();
+        List<String> tripIds = Arrays.asList("a", "b");
+        when(tripRepository.findAllById(tripIds)).thenReturn(Collections.singletonList(trip("a", "X", "Y", 8)));
+
+        List<TripDto> refreshed = tripSearchIndex.refresh(tripIds);
+
+        assertEquals(Collections.singletonList("a"), ids(refreshed));
+        assertEquals(8, (int) tripSearchIndex.getCapacity("a"));
+        assertNull(tripSearchIndex.getTrip("b"));
+        assertTrue(tripSearchIndex.findTrips("Y", "Z").isEmpty());
+    }
+
+    @Test
+    void rebuildsRouteGraphAfterChange() {
+        when(tripRepository.findAll()).thenReturn(Collections.singletonList(trip("a", "X", "Y", 4)));
+        tripSearchIndex.rebuild();
+        RouteGraph before = tripSearchIndex.getRouteGraph();
+
+        tripSearchIndex.remove("a");
+
+        assertTrue(before != tripSearchIndex.getRouteGraph());
+        assertTrue(tripSearchIndex.getTrips().isEmpty());
+    }
+
+    private static Trip trip(String id, String sourceStopCode, String destStopCode, int cabCapacity) {
+        return new Trip()
+                .setId(id)
+                .setSnapshot(new TripSnapshot()
+                        .setTripId(id)
+                        .setSourceStopCode(sourceStopCode)
+                        .setSourceStopName(sourceStopCode)
+                        .setDestStopCode(destStopCode)
+                        .setDestStopName(destStopCode)
+                        .setCabCode("CAB")
+                        .setCabCapacity(cabCapacity)
+                        .setAgencyCode("AG")
+                        .setFare(100)
+                        .setJourneyTime(60));
+    }
+
+    private static Stop stop(String code) {
+        return new Stop().setCode(code).setName(code);
+    }
+
+    private static List<String> ids(List<TripDto> trips) {
+        return trips.stream().map(TripDto::getId).collect(Collectors.toList());
+    }
+}
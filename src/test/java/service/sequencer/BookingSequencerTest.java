@@ -0,0 +1,209 @@
+package service.sequencer;
+
+import model.cab.Ticket;
+import model.cab.TripSchedule;
+import model.cab.TripSnapshot;
+import model.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import service.inventory.SeatInventory;
+import service.inventory.SeatReservation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookingSequencerTest {
+    private final FakeInventory seatInventory = new FakeInventory();
+
+    private BookingSequencer sequencer;
+
+    @BeforeEach
+    void start() {
+        sequencer = new BookingSequencer();
+        ReflectionTestUtils.setField(sequencer, "seatInventory", seatInventory);
+        ReflectionTestUtils.setField(sequencer, "partitions", 1);
+        ReflectionTestUtils.setField(sequencer, "queueCapacity", 16);
+        ReflectionTestUtils.setField(sequencer, "batchSize", 16);
+        sequencer.start();
+    }
+
+    @AfterEach
+    void stop() {
+        sequencer.stop();
+    }
+
+    @Test
+    void queuedRequestsShareOneReservation() throws Exception {
+        seatInventory.available.put("s1", 10);
+        CompletableFuture<List<Ticket>> first = blockWriter("s1");
+        CompletableFuture<List<Ticket>> second = sequencer.submit("s1", passengers(2));
+        CompletableFuture<List<Ticket>> third = sequencer.submit("s1", passengers(3));
+        seatInventory.proceed.countDown();
+
+        assertEquals(1, get(first).size());
+        assertEquals(2, get(second).size());
+        assertEquals(3, get(third).size());
+        assertEquals(Arrays.asList(1, 5), seatInventory.reservedCounts);
+        assertEquals(4, (int) seatInventory.available.get("s1"));
+    }
+
+    @Test
+    void fallsBackToRequestOrderWhenBatchDoesNotFit() throws Exception {
+        seatInventory.available.put("s1", 4);
+        CompletableFuture<List<Ticket>> first = blockWriter("s1");
+        CompletableFuture<List<Ticket>> second = sequencer.submit("s1", passengers(2));
+        CompletableFuture<List<Ticket>> third = sequencer.submit("s1", passengers(2));
+        seatInventory.proceed.countDown();
+
+        assertEquals(1, get(first).size());
+        assertEquals(2, get(second).size());
+        assertTrue(get(third).isEmpty());
+    }
+
+    @Test
+    void cancelledRequestIsDroppedBeforeItTakesSeats() throws Exception {
+        seatInventory.available.put("s1", 10);
+        CompletableFuture<List<Ticket>> first = blockWriter("s1");
+        CompletableFuture<List<Ticket>> withdrawn = sequencer.submit("s1", passengers(2));
+
+        assertTrue(withdrawn.cancel(false));
+        seatInventory.proceed.countDown();
+
+        assertEquals(1, get(first).size());
+        assertTrue(withdrawn.isCancelled());
+        //the writer idles once the queue is drained, the withdrawn request never reached the inventory
+        assertEquals(Collections.singletonList(1), seatInventory.reservedCounts);
+        assertEquals(9, (int) seatInventory.available.get("s1"));
+        assertEquals(1, seatInventory.saved.size());
+    }
+
+    @Test
+    void startedRequestCannotBeCancelled() throws Exception {
+        seatInventory.available.put("s1", 10);
+        CompletableFuture<List<Ticket>> started = blockWriter("s1");
+
+        assertFalse(started.cancel(false));
+        seatInventory.proceed.countDown();
+
+        assertEquals(1, get(started).size());
+        assertEquals(1, seatInventory.saved.size());
+    }
+
+    @Test
+    void failedSaveReleasesSeatsAndFailsBatch() throws Exception {
+        seatInventory.available.put("s1", 10);
+        seatInventory.failSave = true;
+        CompletableFuture<List<Ticket>> first = blockWriter("s1");
+        CompletableFuture<List<Ticket>> second = sequencer.submit("s1", passengers(2));
+        seatInventory.proceed.countDown();
+
+        assertThrows(ExecutionException.class, () -> get(first));
+        assertThrows(ExecutionException.class, () -> get(second));
+        assertEquals(10, (int) seatInventory.available.get("s1"));
+    }
+
+    /**
+     * Submits a one seat booking and waits until the writer blocks inside its reservation
+     */
+    private CompletableFuture<List<Ticket>> blockWriter(String tripScheduleId) throws InterruptedException {
+        seatInventory.block = true;
+        CompletableFuture<List<Ticket>> booking = sequencer.submit(tripScheduleId, passengers(1));
+        assertTrue(seatInventory.blocked.await(5, TimeUnit.SECONDS));
+        return booking;
+    }
+
+    private static List<Ticket> get(CompletableFuture<List<Ticket>> booking) throws Exception {
+        return booking.get(5, TimeUnit.SECONDS);
+    }
+
+    private static List<User> passengers(int count) {
+        List<User> passengers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            passengers.add(new User().setEmail("passenger" + i + "@example.com"));
+        }
+        return passengers;
+    }
+
+    private static class FakeInventory implements SeatInventory {
+        private final ConcurrentHashMap<String, Integer> available = new ConcurrentHashMap<>();
+
+        private final List<Integer> reservedCounts = Collections.synchronizedList(new ArrayList<>());
+
+        private final List<Ticket> saved = Collections.synchronizedList(new ArrayList<>());
+
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        private final CountDownLatch proceed = new CountDownLatch(1);
+
+        private volatile boolean block;
+
+        private volatile boolean failSave;
+
+        @Override
+        public SeatReservation reserveSeats(String tripScheduleId, int seats) {
+            if (block) {
+                block = false;
+                blocked.countDown();
+                try {
+                    proceed.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            reservedCounts.add(seats);
+            int left = available.get(tripScheduleId);
+            if (left < seats) {
+                return null;
+            }
+            available.put(tripScheduleId, left - seats);
+            int[] seatNumbers = new int[seats];
+            for (int i = 0; i < seats; i++) {
+                seatNumbers[i] = left - seats + i;
+            }
+            return new SeatReservation(new TripSchedule().setId(tripScheduleId).setTripSnapshot(new TripSnapshot()), seatNumbers);
+        }
+
+        @Override
+        public SeatReservation claimSeats(String tripScheduleId, int[] seatNumbers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean releaseSeats(String tripScheduleId, int[] seatNumbers) {
+            available.merge(tripScheduleId, seatNumbers.length, Integer::sum);
+            return true;
+        }
+
+        @Override
+        public Ticket findByIdempotencyKey(String idempotencyKey) {
+            return null;
+        }
+
+        @Override
+        public int availableSeats(TripSchedule tripSchedule) {
+            return available.get(tripSchedule.getId());
+        }
+
+        @Override
+        public void saveTickets(List<Ticket> tickets) {
+            if (failSave) {
+                throw new IllegalStateException("write failed");
+            }
+            saved.addAll(tickets);
+        }
+    }
+}
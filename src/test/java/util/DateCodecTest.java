@@ -0,0 +1,51 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DateCodecTest {
+
+    @Test
+    void matchesLocalDate() {
+        for (long epochDay = LocalDate.of(1800, 1, 1).toEpochDay(); epochDay <= LocalDate.of(2200, 12, 31).toEpochDay(); epochDay++) {
+            String date = LocalDate.ofEpochDay(epochDay).toString();
+
+            assertEquals(epochDay, DateCodec.parse(date));
+            assertEquals(date, DateCodec.format((int) epochDay));
+        }
+    }
+
+    @Test
+    void handlesLeapDays() {
+        assertEquals(LocalDate.of(2000, 2, 29).toEpochDay(), DateCodec.parse("2000-02-29"));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), DateCodec.parse("2024-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("1900-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("2023-02-29"));
+    }
+
+    @Test
+    void rejectsMalformedDates() {
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("2024-1-05"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("2024/01/05"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("2024-13-01"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("2024-04-31"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("2024-00-10"));
+        assertThrows(IllegalArgumentException.class, () -> DateCodec.parse("20a4-01-05"));
+    }
+
+    @Test
+    void convertsInstantsInDefaultZone() {
+        LocalDate today = LocalDate.now();
+        Date noon = Date.from(today.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant());
+
+        assertEquals(today.toEpochDay(), DateCodec.of(noon));
+        assertEquals(today.toEpochDay(), DateCodec.today());
+    }
+}
@@ -0,0 +1,75 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KdTreeTest {
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(7);
+        int n = 500;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double[] zs = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble() * 2 - 1;
+            ys[i] = random.nextDouble() * 2 - 1;
+            zs[i] = random.nextDouble() * 2 - 1;
+        }
+        KdTree tree = new KdTree(xs.clone(), ys.clone(), zs.clone());
+        for (int query = 0; query < 100; query++) {
+            double x = random.nextDouble() * 2 - 1;
+            double y = random.nextDouble() * 2 - 1;
+            double z = random.nextDouble() * 2 - 1;
+
+            assertArrayEquals(bruteForce(xs, ys, zs, x, y, z, 8), tree.nearest(x, y, z, 8));
+        }
+    }
+
+    @Test
+    void returnsEveryPointWhenKExceedsSize() {
+        KdTree tree = new KdTree(new double[]{0, 3, 1}, new double[]{0, 0, 0}, new double[]{0, 0, 0});
+
+        assertArrayEquals(new int[]{2, 0, 1}, tree.nearest(1.2, 0, 0, 10));
+    }
+
+    @Test
+    void handlesEmptyTreeAndZeroK() {
+        KdTree empty = new KdTree(new double[0], new double[0], new double[0]);
+        KdTree tree = new KdTree(new double[]{1}, new double[]{1}, new double[]{1});
+
+        assertEquals(0, empty.nearest(0, 0, 0, 3).length);
+        assertEquals(0, tree.nearest(0, 0, 0, 0).length);
+    }
+
+    @Test
+    void findsPointsSharingCoordinates() {
+        KdTree tree = new KdTree(new double[]{1, 1, 1, 5}, new double[]{2, 2, 2, 5}, new double[]{3, 3, 3, 5});
+
+        int[] nearest = tree.nearest(1, 2, 3, 3);
+        Arrays.sort(nearest);
+
+        assertArrayEquals(new int[]{0, 1, 2}, nearest);
+    }
+
+    private static int[] bruteForce(double[] xs, double[] ys, double[] zs, double x, double y, double z, int k) {
+        return IntStream.range(0, xs.length)
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> square(xs[i] - x) + square(ys[i] - y) + square(zs[i] - z)))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
@@ -0,0 +1,61 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeatBitmapTest {
+
+    @Test
+    void sizesWords() {
+        assertEquals(0, SeatBitmap.words(0));
+        assertEquals(1, SeatBitmap.words(1));
+        assertEquals(1, SeatBitmap.words(64));
+        assertEquals(2, SeatBitmap.words(65));
+    }
+
+    @Test
+    void setsGivenSeats() {
+        long[] seatMap = SeatBitmap.of(70, Arrays.asList(0, 3, 64, 69, 70, -1));
+
+        assertArrayEquals(new long[]{0b1001L, 0b100001L}, seatMap);
+        assertFalse(SeatBitmap.isFree(seatMap, 70, 3));
+        assertTrue(SeatBitmap.isFree(seatMap, 70, 4));
+        assertFalse(SeatBitmap.isFree(seatMap, 70, 70));
+        assertFalse(SeatBitmap.isFree(seatMap, 70, -1));
+    }
+
+    @Test
+    void setsFirstTakenSeats() {
+        assertArrayEquals(new long[]{-1L, 0b11L}, SeatBitmap.firstTaken(100, 66));
+        assertArrayEquals(new long[]{0b111L}, SeatBitmap.firstTaken(3, 10));
+    }
+
+    @Test
+    void masksSeatsBeyondCapacity() {
+        assertEquals(-1L, SeatBitmap.validMask(100, 0));
+        assertEquals((1L << 36) - 1, SeatBitmap.validMask(100, 1));
+        assertEquals(-1L, SeatBitmap.validMask(128, 1));
+    }
+
+    @Test
+    void findsLowestFreeSeatsAcrossWords() {
+        long[] seatMap = SeatBitmap.firstTaken(100, 63);
+
+        assertArrayEquals(new int[]{63, 64, 65}, SeatBitmap.findFree(seatMap, 100, 3));
+    }
+
+    @Test
+    void findsNothingWhenTooFewSeatsAreFree() {
+        long[] seatMap = SeatBitmap.firstTaken(10, 8);
+
+        assertArrayEquals(new int[]{8, 9}, SeatBitmap.findFree(seatMap, 10, 2));
+        assertNull(SeatBitmap.findFree(seatMap, 10, 3));
+    }
+}
@@ -0,0 +1,100 @@
+package util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    private static final long TICK_MILLIS = 10;
+
+    private final List<String> expired = new CopyOnWriteArrayList<>();
+
+    private TimingWheel<String> timingWheel;
+
+    @AfterEach
+    void stop() {
+        timingWheel.stop();
+    }
+
+    @Test
+    void expiresAfterDelay() throws InterruptedException {
+        CountDownLatch latch = start(4, 1);
+        long started = System.nanoTime();
+        timingWheel.schedule("a", 50);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 50 - TICK_MILLIS);
+        assertEquals("a", expired.get(0));
+    }
+
+    @Test
+    void waitsForRemainingRounds() throws InterruptedException {
+        //a 4 slot wheel turns every 40ms, so this timeout has to survive several passes of its bucket
+        CountDownLatch latch = start(4, 2);
+        long started = System.nanoTime();
+        timingWheel.schedule("late", 150);
+        timingWheel.schedule("early", 20);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 150 - TICK_MILLIS);
+        assertEquals("early", expired.get(0));
+        assertEquals("late", expired.get(1));
+    }
+
+    @Test
+    void cancelledTimeoutNeverExpires() throws InterruptedException {
+        CountDownLatch latch = start(4, 1);
+        TimingWheel.Timeout<String> cancelled = timingWheel.schedule("cancelled", 30);
+        timingWheel.schedule("kept", 60);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, expired.size());
+        assertEquals("kept", expired.get(0));
+    }
+
+    @Test
+    void expiredTimeoutCannotBeCancelled() throws InterruptedException {
+        CountDownLatch latch = start(4, 1);
+        TimingWheel.Timeout<String> timeout = timingWheel.schedule("a", 10);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void failingHandlerDoesNotStopTheWheel() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        timingWheel = new TimingWheel<>("test-wheel", TICK_MILLIS, 4, item -> {
+            if (item.equals("failing")) {
+                throw new IllegalStateException(item);
+            }
+            latch.countDown();
+        });
+        timingWheel.start();
+        timingWheel.schedule("failing", 10);
+        timingWheel.schedule("next", 40);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private CountDownLatch start(int ticksPerWheel, int expected) {
+        CountDownLatch latch = new CountDownLatch(expected);
+        timingWheel = new TimingWheel<>("test-wheel", TICK_MILLIS, ticksPerWheel, item -> {
+            expired.add(item);
+            latch.countDown();
+        });
+        timingWheel.start();
+        return latch;
+    }
+}
@@ -0,0 +1,55 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    @Test
+    void selectsSmallestInOrder() {
+        assertEquals(Arrays.asList(1, 2, 3),
+                TopK.select(Arrays.asList(5, 3, 9, 1, 7, 2), Comparator.naturalOrder(), 3));
+    }
+
+    @Test
+    void returnsAllWhenFewerThanK() {
+        assertEquals(Arrays.asList(1, 4, 8),
+                TopK.select(Arrays.asList(8, 1, 4), Comparator.naturalOrder(), 5));
+    }
+
+    @Test
+    void returnsNothingForNonPositiveK() {
+        assertTrue(TopK.select(Arrays.asList(3, 1), Comparator.<Integer>naturalOrder(), 0).isEmpty());
+        assertTrue(TopK.select(Arrays.asList(3, 1), Comparator.<Integer>naturalOrder(), -1).isEmpty());
+    }
+
+    @Test
+    void keepsDuplicates() {
+        assertEquals(Arrays.asList(1, 1, 2),
+                TopK.select(Arrays.asList(2, 1, 3, 1, 2), Comparator.naturalOrder(), 3));
+    }
+
+    @Test
+    void matchesFullSort() {
+        Random random = new Random(42);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(random.nextInt(500));
+        }
+        Comparator<Integer> descending = Comparator.reverseOrder();
+        List<Integer> sorted = new ArrayList<>(items);
+        sorted.sort(descending);
+
+        assertEquals(sorted.subList(0, 25), TopK.select(items, descending, 25));
+        assertEquals(Collections.emptyList(), TopK.select(Collections.emptyList(), descending, 25));
+    }
+}